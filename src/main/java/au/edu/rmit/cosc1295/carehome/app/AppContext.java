@@ -2,6 +2,21 @@ package au.edu.rmit.cosc1295.carehome.app;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.repository.*;
 import au.edu.rmit.cosc1295.carehome.service.*;
+import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared repositories and services.
+ *
+ * Design: constructing the context is cheap. Repositories, the shift roster and the
+ * vacancy index read their tables on first use, and the constructor schedules those
+ * reads as {@link Startup} stages so they run in parallel while the login dialog is up.
+ * Only what every role's tabs show at once (staff and shifts for login and
+ * authorisation, residents and beds for the bed map) is loaded up front; prescription
+ * and dose history is started by {@link #warmUp} for the roles that work with it, and
+ * otherwise loads when first opened.
+ */
 public final class AppContext {
     // 1) Repos & audit FIRST
     public final InMemoryResidentRepository residentRepo = new InMemoryResidentRepository();
@@ -13,16 +28,70 @@ public final class AppContext {
     // 2) Services AFTER dependencies exist
     public final ShiftService          shiftService          = new ShiftService(staffRepo, audit);
     public final AuthorizationService  authorizationService  = new AuthorizationService(shiftService);
-    public final ResidentService       residentService       = new ResidentService(residentRepo, bedRepo, audit);
+    public final VacancyIndex          vacancies             = new VacancyIndex(bedRepo, residentRepo);
+    public final ResidentService       residentService       = new ResidentService(residentRepo, bedRepo, vacancies, audit);
     public final StaffService          staffService          = new StaffService(staffRepo, audit);
     public final PrescriptionService   prescriptionService   = new PrescriptionService(audit, prescriptionRepo);
     public final AdministrationService administrationService = new AdministrationService(audit, adminRepo);
     public final BedService            bedService            = new BedService(bedRepo, audit);
+    public final DueDoseIndex          dueDoses              = new DueDoseIndex(prescriptionRepo, adminRepo);
     // Track current logged-in user
     private Staff currentUser;
     
+    private final Startup startup = new Startup();
+    private final FastStart fastStart = FastStart.ENABLED
+        ? new FastStart(staffRepo, residentRepo, bedRepo, prescriptionRepo, adminRepo, shiftService)
+        : null;
+    private final Startup.Stage snapshot;
+    
     private AppContext() {
         // No seed data - all data comes from database
+        Startup.Stage schema = startup.stage("schema", AppContext::openDatabase);
+        // With fast start on, the snapshot stage fills every repository and the loads below find them loaded
+        snapshot = startup.stage("snapshot", () -> fastStart == null ? 0 : fastStart.open(), schema);
+        Startup.Stage staff = startup.stage("staff", staffRepo::ensureLoaded, snapshot);
+        startup.stage("shifts", shiftService::ensureLoaded, staff);
+        Startup.Stage residents = startup.stage("residents", residentRepo::ensureLoaded, snapshot);
+        Startup.Stage beds = startup.stage("beds", bedRepo::ensureLoaded, snapshot);
+        startup.stage("vacancies", vacancies::ensureLoaded, beds, residents);
+    }
+    
+    private static int openDatabase() {
+        // Ahead of the table loads
+        try {
+            DatabaseManager.init();
+            return 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open database", e);
+        }
+    }
+    
+    /**
+     * Start loading what {@code role} works with after login: prescriptions and dose
+     * history for doctors and nurses, and the due-dose index for nurses' rounds. Managers
+     * get them when they first open a resident's medication.
+     *
+     * @return completes with the startup timing report once every stage has finished
+     */
+    public CompletableFuture<String> warmUp(Role role) {
+        if (role == Role.DOCTOR || role == Role.NURSE) {
+            Startup.Stage prescriptions = startup.stage("prescriptions", prescriptionRepo::ensureLoaded, snapshot);
+            Startup.Stage administrations = startup.stage("administrations", adminRepo::ensureLoaded, snapshot);
+            if (role == Role.NURSE) {
+                startup.stage("due doses", dueDoses::ensureLoaded, prescriptions, administrations);
+            }
+        }
+        return startup.report();
+    }
+    
+    /**
+     * Seal the fast-start snapshot and journal (see {@link FastStart}) so the next start
+     * can use them. Call once on shutdown, after background commands have finished.
+     */
+    public void saveState() {
+        if (fastStart != null) {
+            fastStart.seal();
+        }
     }
     
     public Staff getCurrentUser() {
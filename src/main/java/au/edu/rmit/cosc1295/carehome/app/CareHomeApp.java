@@ -3,12 +3,16 @@ package au.edu.rmit.cosc1295.carehome.app;
 import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import javafx.fxml.FXMLLoader;
 import au.edu.rmit.cosc1295.carehome.model.Staff;
+import au.edu.rmit.cosc1295.carehome.util.CommandRunner;
+import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import java.time.Duration;
 
 /**
  * Main JavaFX Application for Care Home Management System.
@@ -24,12 +28,20 @@ import au.edu.rmit.cosc1295.carehome.model.Staff;
  */
 public class CareHomeApp extends Application {
     
+    @Override
+    public void init() {
+        // Creating the context starts the table loads; they run while the login dialog is up
+        AppContext.get();
+    }
+    
     @Override
     public void start(Stage primaryStage) {
         // Show login dialog first
         if (!showLoginDialog()) {
             return; // User cancelled login
         }
+        AppContext.get().warmUp(AppContext.get().getCurrentUser().getRole())
+            .thenAccept(System.out::print);
         
         try {
             // Load main view with tabs
@@ -38,6 +50,9 @@ public class CareHomeApp extends Application {
             
             Scene scene = new Scene(root, 1200, 800);
             scene.getStylesheets().add(getClass().getResource("/css/styles.css").toExternalForm());
+            // Service calls run in the background; show a busy cursor while any is in flight
+            CommandRunner.busyProperty().addListener((o, wasBusy, busy) ->
+                scene.setCursor(busy ? Cursor.WAIT : Cursor.DEFAULT));
             
             Staff currentUser = AppContext.get().getCurrentUser();
             primaryStage.setTitle("RMIT Care Home Management System - Logged in as: " + 
@@ -51,6 +66,18 @@ public class CareHomeApp extends Application {
         }
     }
     
+    @Override
+    public void stop() {
+        // Let commands still writing finish before their targets are closed
+        CommandRunner.shutdown(Duration.ofSeconds(5));
+        // Record the in-memory state for the next fast start, if enabled
+        AppContext.get().saveState();
+        // Make queued audit entries durable before the JVM exits
+        AppContext.get().audit.close();
+        // Release pooled connections so H2 can close the database file cleanly
+        DatabaseManager.close();
+    }
+    
     private boolean showLoginDialog() {
         Dialog<Staff> dialog = new Dialog<>();
         dialog.setTitle("Care Home - Login");
@@ -121,13 +148,9 @@ public class CareHomeApp extends Application {
     
     private Staff authenticateUser(String username, String password) {
         var ctx = AppContext.get();
-        for (Staff staff : ctx.staffRepo.findAll()) {
-            if (staff.getUsername().equals(username) && 
-                staff.getPasswordHash().equals(password)) {
-                return staff;
-            }
-        }
-        return null;
+        return ctx.staffRepo.findByUsername(username)
+            .filter(staff -> staff.getPasswordHash().equals(password))
+            .orElse(null);
     }
     
     private void showError(String title, String message) {
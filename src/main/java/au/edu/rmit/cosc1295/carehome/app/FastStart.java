@@ -0,0 +1,533 @@
+package au.edu.rmit.cosc1295.carehome.app;
+
+import au.edu.rmit.cosc1295.carehome.model.*;
+import au.edu.rmit.cosc1295.carehome.repository.*;
+import au.edu.rmit.cosc1295.carehome.service.ShiftService;
+import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import au.edu.rmit.cosc1295.carehome.util.Journal;
+import au.edu.rmit.cosc1295.carehome.util.SnapshotFile;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Opt-in fast start: rebuilds the in-memory model from a binary snapshot plus a journal
+ * of later changes, instead of reading every table from H2 row by row.
+ *
+ * Design: H2 stays the system of record and every write still goes there first. The
+ * snapshot ({@link SnapshotFile}) holds every repository and the shift rosters in a
+ * compact binary form; the journal ({@link Journal}) holds each change published since:
+ * repository upserts and removals and assigned shifts. A row in snapshot_meta ties the
+ * two files to this database: the generation both must carry, the journal length that
+ * was forced to disk, and whether the last run sealed them. Startup reads the snapshot,
+ * replays the journal and hands the result to the repositories only if all of that
+ * matches and every checksum passes; otherwise the tables load from H2 as usual.
+ *
+ * A run marks the row unsealed as soon as it starts, so after a crash (when the journal
+ * may be missing the last changes) the next start reads H2. A clean shutdown seals: it
+ * forces the journal and records its length, or, when the journal has grown past half
+ * the snapshot or there was no usable snapshot, writes a new snapshot under a new
+ * generation and empties the journal.
+ *
+ * History repositories keep their loaded window: the snapshot records where it starts,
+ * and journalled rows older than that (pages pulled in by loadOlder) are skipped because
+ * H2 serves them on demand. Edits made to the database by another tool while the files
+ * are sealed are not noticed.
+ *
+ * Settings: carehome.snapshot=true enables it; carehome.snapshot.dir (default the
+ * working directory) holds carehome.snapshot and carehome.journal.
+ */
+final class FastStart {
+    static final boolean ENABLED = Boolean.getBoolean("carehome.snapshot");
+
+    /** 2: dose record keys are numeric ids. */
+    private static final int FORMAT = 2;
+    private static final Path DIR = Paths.get(System.getProperty("carehome.snapshot.dir", "."));
+    private static final Path SNAPSHOT = DIR.resolve("carehome.snapshot");
+    private static final Path JOURNAL = DIR.resolve("carehome.journal");
+
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte STAFF = 1;
+    private static final byte RESIDENT = 2;
+    private static final byte BED = 3;
+    private static final byte PRESCRIPTION = 4;
+    private static final byte ADMINISTRATION = 5;
+    private static final byte SHIFT = 6;
+
+    private record Meta(long generation, long journalLength, boolean sealed) {}
+
+    /** Encodes one entity type; a null entity is never passed. */
+    private interface Codec<T> {
+        void write(DataOutputStream out, T value) throws IOException;
+
+        T read(ByteBuffer in);
+    }
+
+    /** Everything read from the snapshot and journal, before it is handed over. */
+    private static final class State {
+        final Map<String, Staff> staff = new LinkedHashMap<>();
+        final Map<String, Resident> residents = new LinkedHashMap<>();
+        final Map<String, Bed> beds = new LinkedHashMap<>();
+        final Map<String, Prescription> prescriptions = new LinkedHashMap<>();
+        final Map<String, AdministrationRecord> administrations = new LinkedHashMap<>();
+        final Map<String, List<Shift>> shifts = new HashMap<>();
+        LocalDateTime prescriptionsFrom;
+        LocalDateTime administrationsFrom;
+
+        int rows() {
+            int n = staff.size() + residents.size() + beds.size() + prescriptions.size() + administrations.size();
+            for (List<Shift> list : shifts.values()) {
+                n += list.size();
+            }
+            return n;
+        }
+    }
+
+    private final InMemoryStaffRepository staffRepo;
+    private final InMemoryResidentRepository residentRepo;
+    private final InMemoryBedRepository bedRepo;
+    private final InMemoryPrescriptionRepository prescriptionRepo;
+    private final InMemoryAdministrationRepository adminRepo;
+    private final ShiftService shiftService;
+
+    private final List<Runnable> subscriptions = new ArrayList<>();
+    private boolean active;
+    private boolean snapshotStale;
+    private long generation;
+    private long snapshotBytes;
+    private Journal journal;
+    private volatile IOException journalFailure;
+
+    FastStart(InMemoryStaffRepository staffRepo, InMemoryResidentRepository residentRepo,
+              InMemoryBedRepository bedRepo, InMemoryPrescriptionRepository prescriptionRepo,
+              InMemoryAdministrationRepository adminRepo, ShiftService shiftService) {
+        this.staffRepo = staffRepo;
+        this.residentRepo = residentRepo;
+        this.bedRepo = bedRepo;
+        this.prescriptionRepo = prescriptionRepo;
+        this.adminRepo = adminRepo;
+        this.shiftService = shiftService;
+    }
+
+    // ---- startup ----
+
+    /**
+     * Restore the model from the snapshot and journal if they match the database, and
+     * start journalling. Must run before anything else loads the repositories.
+     *
+     * @return rows restored; 0 if the tables are to be loaded from H2
+     */
+    synchronized int open() {
+        Meta meta;
+        try {
+            meta = readMeta();
+        } catch (SQLException e) {
+            System.out.println("Fast start: snapshot_meta unreadable, loading from the database");
+            e.printStackTrace();
+            return 0;
+        }
+        int rows = 0;
+        long journalLength = 0;
+        if (meta == null) {
+            System.out.println("Fast start: no snapshot yet, loading from the database");
+        } else if (!meta.sealed()) {
+            System.out.println("Fast start: last run did not shut down cleanly, loading from the database");
+        } else {
+            try {
+                rows = restore(meta);
+                generation = meta.generation();
+                journalLength = meta.journalLength();
+                snapshotBytes = Files.size(SNAPSHOT);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Fast start: snapshot not used (" + e.getMessage() + "), loading from the database");
+                rows = 0;
+            }
+        }
+        boolean restored = journalLength > 0;
+        if (!restored) {
+            generation = ThreadLocalRandom.current().nextLong();
+            snapshotStale = true;
+        }
+        try {
+            // From here until seal() a crash must send the next start to H2
+            writeMeta(generation, journalLength, false);
+            journal = new Journal(JOURNAL, generation, journalLength);
+        } catch (SQLException | IOException e) {
+            System.out.println("Fast start: disabled for this run, could not mark the snapshot in use");
+            e.printStackTrace();
+            return rows;
+        }
+        if (restored) {
+            attach();
+        }
+        active = true;
+        return rows;
+    }
+
+    private int restore(Meta meta) throws IOException {
+        State state = new State();
+        ByteBuffer body = SnapshotFile.read(SNAPSHOT, FORMAT, meta.generation());
+        readSnapshot(body, state);
+        Journal.replay(JOURNAL, meta.generation(), meta.journalLength(), record -> apply(record, state));
+        // Residents before beds so listeners see occupants; nothing is handed over until
+        // both files have been read in full
+        staffRepo.restore(state.staff);
+        residentRepo.restore(state.residents);
+        bedRepo.restore(state.beds);
+        prescriptionRepo.restore(state.prescriptions, state.prescriptionsFrom);
+        adminRepo.restore(state.administrations, state.administrationsFrom);
+        shiftService.restore(state.shifts);
+        return state.rows();
+    }
+
+    private static void readSnapshot(ByteBuffer in, State state) {
+        readEntries(in, STAFF_CODEC, state.staff);
+        readEntries(in, RESIDENT_CODEC, state.residents);
+        readEntries(in, BED_CODEC, state.beds);
+        state.prescriptionsFrom = readTime(in);
+        readEntries(in, PRESCRIPTION_CODEC, state.prescriptions);
+        state.administrationsFrom = readTime(in);
+        readEntries(in, ADMINISTRATION_CODEC, state.administrations);
+        int staff = in.getInt();
+        for (int i = 0; i < staff; i++) {
+            String staffId = readString(in);
+            int n = in.getInt();
+            List<Shift> list = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) {
+                list.add(SHIFT_CODEC.read(in));
+            }
+            state.shifts.put(staffId, list);
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalStateException("snapshot has trailing bytes");
+        }
+    }
+
+    private static <T> void readEntries(ByteBuffer in, Codec<T> codec, Map<String, T> into) {
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            String key = readString(in);
+            into.put(key, codec.read(in));
+        }
+    }
+
+    private static void apply(ByteBuffer record, State state) {
+        byte op = record.get();
+        byte type = record.get();
+        String key = readString(record);
+        switch (type) {
+            case STAFF -> apply(op, key, record, STAFF_CODEC, state.staff, s -> true);
+            case RESIDENT -> apply(op, key, record, RESIDENT_CODEC, state.residents, r -> true);
+            case BED -> apply(op, key, record, BED_CODEC, state.beds, b -> true);
+            case PRESCRIPTION -> apply(op, key, record, PRESCRIPTION_CODEC, state.prescriptions,
+                                       p -> inWindow(p.getCreatedAt(), state.prescriptionsFrom));
+            case ADMINISTRATION -> apply(op, key, record, ADMINISTRATION_CODEC, state.administrations,
+                                         a -> inWindow(a.getTimestamp(), state.administrationsFrom));
+            case SHIFT -> state.shifts.computeIfAbsent(key, k -> new ArrayList<>()).add(SHIFT_CODEC.read(record));
+            default -> throw new IllegalStateException("unknown journal record type " + type);
+        }
+    }
+
+    private static <T> void apply(byte op, String key, ByteBuffer record, Codec<T> codec, Map<String, T> into,
+                                  Predicate<T> keep) {
+        if (op == REMOVE) {
+            into.remove(key);
+        } else {
+            T value = codec.read(record);
+            if (keep.test(value)) {
+                into.put(key, value);
+            }
+        }
+    }
+
+    private static boolean inWindow(LocalDateTime time, LocalDateTime from) {
+        return from == null || time == null || !time.isBefore(from);
+    }
+
+    // ---- journalling ----
+
+    private void attach() {
+        subscriptions.add(staffRepo.subscribe(e -> record(STAFF, e, STAFF_CODEC)));
+        subscriptions.add(residentRepo.subscribe(e -> record(RESIDENT, e, RESIDENT_CODEC)));
+        subscriptions.add(bedRepo.subscribe(e -> record(BED, e, BED_CODEC)));
+        subscriptions.add(prescriptionRepo.subscribe(e -> record(PRESCRIPTION, e, PRESCRIPTION_CODEC)));
+        subscriptions.add(adminRepo.subscribe(e -> record(ADMINISTRATION, e, ADMINISTRATION_CODEC)));
+        subscriptions.add(shiftService.subscribe((staffId, shift) -> append(UPSERT, SHIFT, staffId, SHIFT_CODEC, shift)));
+    }
+
+    private <T> void record(byte type, RepositoryEvent<T> event, Codec<T> codec) {
+        if (event.kind() == RepositoryEvent.Kind.REMOVED) {
+            append(REMOVE, type, event.key(), codec, null);
+        } else {
+            append(UPSERT, type, event.key(), codec, event.entity());
+        }
+    }
+
+    private <T> void append(byte op, byte type, String key, Codec<T> codec, T value) {
+        if (journalFailure != null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            out.writeByte(type);
+            writeString(out, key);
+            if (value != null) {
+                codec.write(out, value);
+            }
+            journal.append(bytes.toByteArray());
+        } catch (IOException e) {
+            // The change is in H2 already; the next shutdown writes a full snapshot instead
+            journalFailure = e;
+            e.printStackTrace();
+        }
+    }
+
+    // ---- shutdown ----
+
+    /**
+     * Make the snapshot and journal match the database and mark them usable for the next
+     * start. Call on clean shutdown, once nothing is writing any more.
+     */
+    synchronized void seal() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        subscriptions.forEach(Runnable::run);
+        subscriptions.clear();
+        DatabaseManager.flush();
+        try {
+            long journalBytes = journal.length() - Journal.HEADER_BYTES;
+            if (snapshotStale || journalFailure != null || journalBytes > snapshotBytes / 2) {
+                long next = ThreadLocalRandom.current().nextLong();
+                snapshotBytes = SnapshotFile.write(SNAPSHOT, FORMAT, next, this::writeSnapshot);
+                journal.reset(next);
+                generation = next;
+            }
+            writeMeta(generation, journal.force(), true);
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.out.println("Fast start: could not seal the snapshot, the next start loads from the database");
+            e.printStackTrace();
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        writeEntries(out, staffRepo::forEachEntry, STAFF_CODEC);
+        writeEntries(out, residentRepo::forEachEntry, RESIDENT_CODEC);
+        writeEntries(out, bedRepo::forEachEntry, BED_CODEC);
+        writeTime(out, prescriptionRepo.getLoadedFrom());
+        writeEntries(out, prescriptionRepo::forEachEntry, PRESCRIPTION_CODEC);
+        writeTime(out, adminRepo.getLoadedFrom());
+        writeEntries(out, adminRepo::forEachEntry, ADMINISTRATION_CODEC);
+        Map<String, List<Shift>> shifts = shiftService.allShifts();
+        out.writeInt(shifts.size());
+        for (Map.Entry<String, List<Shift>> e : shifts.entrySet()) {
+            writeString(out, e.getKey());
+            out.writeInt(e.getValue().size());
+            for (Shift shift : e.getValue()) {
+                SHIFT_CODEC.write(out, shift);
+            }
+        }
+    }
+
+    private static <T> void writeEntries(DataOutputStream out, Consumer<BiConsumer<String, T>> source,
+                                         Codec<T> codec) throws IOException {
+        Map<String, T> entries = new LinkedHashMap<>();
+        source.accept(entries::put);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, T> e : entries.entrySet()) {
+            writeString(out, e.getKey());
+            codec.write(out, e.getValue());
+        }
+    }
+
+    // ---- snapshot_meta ----
+
+    private static Meta readMeta() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                 "SELECT generation, journal_length, sealed FROM snapshot_meta WHERE id = 1");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? new Meta(rs.getLong(1), rs.getLong(2), rs.getBoolean(3)) : null;
+        }
+    }
+
+    private static void writeMeta(long generation, long journalLength, boolean sealed) throws SQLException {
+        // Written directly, not through write-behind: it must be durable before we go on
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                 "MERGE INTO snapshot_meta (id, generation, journal_length, sealed) KEY (id) VALUES (1, ?, ?, ?)")) {
+            ps.setLong(1, generation);
+            ps.setLong(2, journalLength);
+            ps.setBoolean(3, sealed);
+            ps.executeUpdate();
+        }
+    }
+
+    // ---- encoding ----
+
+    private static final Codec<Staff> STAFF_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, Staff s) throws IOException {
+            writeString(out, s.getId());
+            writeString(out, s.getName());
+            writeString(out, s.getRole().name());
+            writeString(out, s.getUsername());
+            writeString(out, s.getPasswordHash());
+        }
+
+        public Staff read(ByteBuffer in) {
+            String id = readString(in);
+            String name = readString(in);
+            Role role = Role.valueOf(readString(in));
+            String username = readString(in);
+            String passwordHash = readString(in);
+            return switch (role) {
+                case MANAGER -> new Manager(id, name, username, passwordHash);
+                case DOCTOR -> new Doctor(id, name, username, passwordHash);
+                case NURSE -> new Nurse(id, name, username, passwordHash);
+            };
+        }
+    };
+
+    private static final Codec<Resident> RESIDENT_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, Resident r) throws IOException {
+            writeString(out, r.getId());
+            writeString(out, r.getName());
+            writeString(out, r.getGender().name());
+            writeString(out, r.getBedId());
+        }
+
+        public Resident read(ByteBuffer in) {
+            Resident r = new Resident(readString(in), readString(in), Gender.valueOf(readString(in)));
+            String bedId = readString(in);
+            if (bedId != null) {
+                r.setBedId(bedId);
+            }
+            return r;
+        }
+    };
+
+    private static final Codec<Bed> BED_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, Bed b) throws IOException {
+            writeString(out, b.getId());
+            writeString(out, b.getResidentId());
+        }
+
+        public Bed read(ByteBuffer in) {
+            Bed b = new Bed(readString(in));
+            String residentId = readString(in);
+            if (residentId != null) {
+                b.assignResident(residentId);
+            }
+            return b;
+        }
+    };
+
+    private static final Codec<Prescription> PRESCRIPTION_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, Prescription p) throws IOException {
+            writeString(out, p.getId());
+            writeString(out, p.getResidentId());
+            writeString(out, p.getDoctorId());
+            writeString(out, p.getMedicine());
+            writeString(out, p.getDose());
+            writeString(out, p.getSchedule());
+            writeTime(out, p.getCreatedAt());
+        }
+
+        public Prescription read(ByteBuffer in) {
+            return new Prescription(readString(in), readString(in), readString(in), readString(in),
+                                    readString(in), readString(in), readTime(in));
+        }
+    };
+
+    private static final Codec<AdministrationRecord> ADMINISTRATION_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, AdministrationRecord a) throws IOException {
+            writeString(out, a.getResidentId());
+            writeString(out, a.getNurseId());
+            writeString(out, a.getMedicine());
+            writeString(out, a.getDose());
+            writeString(out, a.getPrescriptionTime());
+            writeTime(out, a.getTimestamp());
+        }
+
+        public AdministrationRecord read(ByteBuffer in) {
+            return new AdministrationRecord(readString(in), readString(in), readString(in), readString(in),
+                                            readString(in), readTime(in));
+        }
+    };
+
+    private static final Codec<Shift> SHIFT_CODEC = new Codec<>() {
+        public void write(DataOutputStream out, Shift s) throws IOException {
+            writeString(out, s.getDay().name());
+            out.writeLong(s.getStart().toNanoOfDay());
+            out.writeLong(s.getEnd().toNanoOfDay());
+        }
+
+        public Shift read(ByteBuffer in) {
+            return new Shift(DayOfWeek.valueOf(readString(in)),
+                             LocalTime.ofNanoOfDay(in.getLong()), LocalTime.ofNanoOfDay(in.getLong()));
+        }
+    };
+
+    /** Strings are a byte length (-1 for null) and UTF-8. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[n];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Times are UTC epoch seconds and nanos; Long.MIN_VALUE seconds for null. */
+    private static void writeTime(DataOutputStream out, LocalDateTime t) throws IOException {
+        if (t == null) {
+            out.writeLong(Long.MIN_VALUE);
+            return;
+        }
+        out.writeLong(t.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(t.getNano());
+    }
+
+    private static LocalDateTime readTime(ByteBuffer in) {
+        long seconds = in.getLong();
+        return seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, in.getInt(), ZoneOffset.UTC);
+    }
+}
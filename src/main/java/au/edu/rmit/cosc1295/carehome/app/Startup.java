@@ -0,0 +1,137 @@
+package au.edu.rmit.cosc1295.carehome.app;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the startup loads in parallel, each stage as soon as the stages it depends on have
+ * finished, and records what each one cost.
+ *
+ * Design: a stage is a named task that returns how many rows it loaded, plus the stages
+ * it must run after. Independent stages overlap on a small pool of daemon threads (sized
+ * to match the database pool), so cold start costs roughly the longest dependency chain
+ * rather than the sum of all loads. A stage that throws is reported and its dependents
+ * still run: every load here is also triggered on first use, so nothing relies on a
+ * stage having succeeded.
+ *
+ * Pool size: carehome.startup.threads (default 4). Idle threads exit after a few seconds.
+ */
+final class Startup {
+    private static final int THREADS = Integer.getInteger("carehome.startup.threads", 4);
+
+    /**
+     * What one stage cost. Times are milliseconds since the runner was created.
+     */
+    record Timing(String name, List<String> after, String thread, long startMs, long tookMs,
+                  int rows, Throwable failure) {
+    }
+
+    /**
+     * A scheduled stage; pass it to {@link #stage} to make later stages wait for it.
+     */
+    static final class Stage {
+        private final String name;
+        private final CompletableFuture<Timing> done;
+
+        private Stage(String name, CompletableFuture<Timing> done) {
+            this.name = name;
+            this.done = done;
+        }
+    }
+
+    private final long origin = System.nanoTime();
+    private final ThreadPoolExecutor executor;
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+    Startup() {
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "startup-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedule {@code work} to run once every stage in {@code after} has finished.
+     *
+     * @param work the load; returns the number of rows it loaded
+     */
+    Stage stage(String name, IntSupplier work, Stage... after) {
+        List<String> afterNames = new ArrayList<>(after.length);
+        CompletableFuture<?>[] deps = new CompletableFuture<?>[after.length];
+        for (int i = 0; i < after.length; i++) {
+            afterNames.add(after[i].name);
+            deps[i] = after[i].done;
+        }
+        CompletableFuture<Timing> done = CompletableFuture.allOf(deps)
+            .thenApplyAsync(v -> run(name, List.copyOf(afterNames), work), executor);
+        Stage stage = new Stage(name, done);
+        stages.add(stage);
+        return stage;
+    }
+
+    private Timing run(String name, List<String> after, IntSupplier work) {
+        long start = System.nanoTime();
+        int rows = 0;
+        Throwable failure = null;
+        try {
+            rows = work.getAsInt();
+        } catch (RuntimeException e) {
+            failure = e;
+            e.printStackTrace();
+        }
+        long end = System.nanoTime();
+        return new Timing(name, after, Thread.currentThread().getName(),
+                          toMillis(start - origin), toMillis(end - start), rows, failure);
+    }
+
+    /**
+     * Completes, once every stage scheduled so far has finished, with a table of when each
+     * stage started, how long it took and how many rows it loaded.
+     */
+    CompletableFuture<String> report() {
+        List<CompletableFuture<Timing>> pending = new ArrayList<>();
+        for (Stage stage : stages) {
+            pending.add(stage.done);
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> format(pending.stream().map(CompletableFuture::join).toList()));
+    }
+
+    private static String format(List<Timing> timings) {
+        List<Timing> sorted = new ArrayList<>(timings);
+        sorted.sort(Comparator.comparingLong(Timing::startMs).thenComparing(Timing::name));
+        long wall = 0;
+        long work = 0;
+        int rows = 0;
+        for (Timing t : sorted) {
+            wall = Math.max(wall, t.startMs() + t.tookMs());
+            work += t.tookMs();
+            rows += t.rows();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Startup: %d stages, %d rows, %d ms elapsed, %d ms of loading%n",
+                                sorted.size(), rows, wall, work));
+        for (Timing t : sorted) {
+            sb.append(String.format("  %-16s start %6d ms  took %6d ms  %8d rows  %-10s %s%s%n",
+                                    t.name(), t.startMs(), t.tookMs(), t.rows(), t.thread(),
+                                    t.after().isEmpty() ? "" : "after " + String.join(", ", t.after()),
+                                    t.failure() == null ? "" : "  FAILED: " + t.failure()));
+        }
+        return sb.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -1,34 +1,296 @@
 package au.edu.rmit.cosc1295.carehome.controller;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.ObservableListBase;
 import javafx.fxml.FXML;
-import javafx.scene.control.TextArea;
-import java.nio.file.*;
-import java.nio.charset.StandardCharsets;
+import javafx.scene.control.*;
+import javafx.util.Duration;
+import au.edu.rmit.cosc1295.carehome.app.AppContext;
+import au.edu.rmit.cosc1295.carehome.service.AuditEntry;
+import au.edu.rmit.cosc1295.carehome.service.AuditSegment;
+import au.edu.rmit.cosc1295.carehome.service.AuditService;
+import au.edu.rmit.cosc1295.carehome.util.LineFile;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Controller for Admin Log View.
- * 
+ *
  * Displays the audit log of all actions performed in the system.
  * Each action is logged with timestamp, staff ID, action type, and details.
- * 
+ * The log is shown one segment at a time: the active segment by default,
+ * and the rotated segments under audit/ (compressed or not) through the
+ * Older/Newer buttons or by jumping to a time.
+ *
+ * Each segment is indexed by line (see {@link LineFile}) and shown in a
+ * virtualised ListView that only asks for the rows on screen. The active
+ * segment is read from disk on demand and tailed live once a second; it is
+ * not mapped or held open, so the audit writer can always roll it. A rotated
+ * segment never changes, so it is decompressed into memory once when shown.
+ *
  * This satisfies the regulatory requirement that all actions must be
  * logged for audit purposes.
  */
 public class AdminLogController {
-    @FXML private TextArea logArea;
-    
-    @FXML 
+    @FXML private ListView<String> logList;
+    @FXML private TextField jumpField;
+    @FXML private CheckBox followTail;
+    @FXML private Label logStatusLabel;
+
+    private static final DateTimeFormatter JUMP_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private AuditService audit;
+    // Oldest first; the last one is the active segment
+    private List<AuditSegment> segments = List.of();
+    private int page;
+    private LineFile file;
+    private final LogLines lines = new LogLines();
+    private final Timeline tail = new Timeline(new KeyFrame(Duration.seconds(1), e -> poll()));
+
+    @FXML
     public void initialize() {
+        audit = AppContext.get().audit;
+        logList.setItems(lines);
+
+        // Only tail while the view is part of a scene
+        tail.setCycleCount(Timeline.INDEFINITE);
+        logList.sceneProperty().addListener((o, oldScene, scene) -> {
+            if (scene == null) {
+                tail.stop();
+            } else {
+                tail.play();
+            }
+        });
+
         // Auto-load log on initialization
-        onRefresh();
+        showActive();
     }
-    
-    @FXML 
+
+    /**
+     * Back to the active segment and pick up anything new.
+     */
+    @FXML
     public void onRefresh() {
+        if (onActive()) {
+            poll();
+        } else {
+            showActive();
+        }
+    }
+
+    @FXML
+    public void onOlder() {
+        reloadSegments();
+        if (page == 0) {
+            logStatusLabel.setText("This is the oldest segment");
+            return;
+        }
+        showPage(page - 1);
+    }
+
+    @FXML
+    public void onNewer() {
+        reloadSegments();
+        if (onActive()) {
+            logStatusLabel.setText("This is the current segment");
+        } else if (page + 1 == segments.size() - 1) {
+            showActive();
+        } else {
+            showPage(page + 1);
+        }
+    }
+
+    private boolean onActive() {
+        return page == segments.size() - 1;
+    }
+
+    /**
+     * Re-list the segments, keeping {@link #page} on the one shown. Rotation adds
+     * segments at the end and compression changes their paths, so a closed segment is
+     * found again by its first entry.
+     */
+    private void reloadSegments() {
+        AuditSegment shown = onActive() ? null : segments.get(page);
+        segments = audit.segments(null, null);
+        page = segments.size() - 1;
+        if (shown != null) {
+            // Not found: it expired, and so was the oldest
+            page = 0;
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (Objects.equals(segments.get(i).first(), shown.first())) {
+                    page = i;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void showActive() {
+        segments = audit.segments(null, null);
+        page = segments.size() - 1;
+        file = new LineFile(audit.activeSegment());
+        lines.reset(0);
+        followTail.setSelected(true);
+        poll();
+    }
+
+    /**
+     * Show the closed segment at {@code index}.
+     */
+    private boolean showPage(int index) {
+        AuditSegment segment = segments.get(index);
+        LineFile loaded;
+        try (InputStream in = segment.open()) {
+            loaded = LineFile.read(in);
+        } catch (IOException ex) {
+            logStatusLabel.setText("Error reading " + segment.path().getFileName() + ": " + ex.getMessage());
+            return false;
+        }
+        file = loaded;
+        page = index;
+        followTail.setSelected(false);
+        lines.reset(file.lineCount());
+        logList.scrollTo(0);
+        logStatusLabel.setText(file.lineCount() + " entries in segment " + (index + 1) + " of "
+                               + segments.size() + " (" + segment.path().getFileName() + ")");
+        return true;
+    }
+
+    /**
+     * Pick up new lines in the active segment and, when following, keep the newest line
+     * in view. Closed segments do not change.
+     */
+    private void poll() {
+        if (!onActive()) {
+            return;
+        }
         try {
-            var p = Paths.get("actions.log");
-            logArea.setText(Files.exists(p) ? Files.readString(p, StandardCharsets.UTF_8) : "(No log yet)");
-        } catch (Exception ex) { 
-            logArea.setText("Error reading log: " + ex.getMessage()); 
+            int added = file.refresh();
+            int count = file.lineCount();
+            if (added == LineFile.RESET) {
+                // Rolled: the old contents are now the newest closed segment
+                segments = audit.segments(null, null);
+                page = segments.size() - 1;
+                lines.reset(count);
+            } else if (added > 0) {
+                lines.grow(count);
+            }
+            if (added != 0 && followTail.isSelected() && count > 0) {
+                logList.scrollTo(count - 1);
+            }
+            // Leave messages such as jump results alone until something changes
+            if (added != 0 || count == 0) {
+                logStatusLabel.setText(count == 0 ? "(No entries in current segment)"
+                    : count + " entries in current segment, " + page + " older segments");
+            }
+        } catch (IOException ex) {
+            logStatusLabel.setText("Error reading log: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Scroll to the first entry at or after the entered time. Entries are in time order,
+     * so this opens the first segment that reaches the time and binary searches its lines.
+     */
+    @FXML
+    public void onJumpToTime() {
+        LocalDateTime target;
+        try {
+            target = LocalDateTime.parse(jumpField.getText().trim(), JUMP_FORMAT);
+        } catch (DateTimeParseException ex) {
+            logStatusLabel.setText("Enter a time as yyyy-MM-dd HH:mm");
+            return;
+        }
+        reloadSegments();
+        int index = segments.size() - 1;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (segments.get(i).overlaps(target, null)) {
+                index = i;
+                break;
+            }
+        }
+        while (true) {
+            if (index == segments.size() - 1) {
+                showActive();
+            } else if (!showPage(index)) {
+                return;
+            }
+            int lo = 0;
+            int hi = file.lineCount();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                LocalDateTime t = timeAt(mid);
+                if (t != null && t.isBefore(target)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            followTail.setSelected(false);
+            if (lo < file.lineCount()) {
+                if (index == 0 && lo == 0 && timeAt(0) != null && timeAt(0).isAfter(target)) {
+                    logStatusLabel.setText("The log starts after " + jumpField.getText().trim());
+                }
+                logList.scrollTo(lo);
+                logList.getSelectionModel().select(lo);
+                return;
+            }
+            if (onActive()) {
+                logStatusLabel.setText("No entries at or after " + jumpField.getText().trim());
+                return;
+            }
+            // Everything in this segment is earlier: the answer is the next one's first line
+            index++;
+        }
+    }
+
+    private LocalDateTime timeAt(int index) {
+        AuditEntry entry = AuditEntry.parse(file.line(index));
+        return entry != null ? entry.time() : null;
+    }
+
+    /**
+     * Read-only list view of the segment shown. Rows are decoded on demand when the
+     * ListView asks for them.
+     */
+    private final class LogLines extends ObservableListBase<String> {
+        private int size;
+
+        @Override
+        public String get(int index) {
+            return file.line(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void grow(int newSize) {
+            int oldSize = size;
+            size = newSize;
+            beginChange();
+            nextAdd(oldSize, newSize);
+            endChange();
+        }
+
+        void reset(int newSize) {
+            beginChange();
+            if (size > 0) {
+                nextRemove(0, Collections.nCopies(size, ""));
+            }
+            size = newSize;
+            if (newSize > 0) {
+                nextAdd(0, newSize);
+            }
+            endChange();
         }
     }
 }
@@ -0,0 +1,240 @@
+package au.edu.rmit.cosc1295.carehome.controller;
+
+import au.edu.rmit.cosc1295.carehome.model.Bed;
+import au.edu.rmit.cosc1295.carehome.model.BedLocation;
+import au.edu.rmit.cosc1295.carehome.model.Gender;
+import au.edu.rmit.cosc1295.carehome.model.Resident;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The ward/room/bed occupancy map shown on the Residents tab.
+ *
+ * Design: the layout comes from the bed ids themselves ({@link BedLocation}), so any number
+ * of wards and rooms is shown without changing the FXML; beds whose id is not in W#-R#-B#
+ * form are listed under "Other beds" instead of being dropped. Each room is one row of a
+ * ListView, so only the rooms in the viewport have nodes, and the cells (and the bed tiles
+ * inside them) are recycled as the user scrolls.
+ *
+ * Rows are immutable snapshots of a room: a bed change builds a new row for its room and
+ * replaces that one list entry, which redraws that one cell. Occupant names come from a
+ * lookup function (the controller's resident cache), called only when a bed changes.
+ */
+final class BedMap {
+    /** Ward/room number used for beds whose id has no location. */
+    static final int OTHER = Integer.MAX_VALUE;
+
+    private static final String TILE_STYLE =
+        "-fx-border-color: #666; -fx-border-width: 1; -fx-padding: 5; -fx-background-radius: 5;";
+    private static final String[] WARD_STYLES = {
+        "-fx-border-color: #1976D2; -fx-background-color: linear-gradient(to bottom, #E3F2FD, #FFFFFF);",
+        "-fx-border-color: #388E3C; -fx-background-color: linear-gradient(to bottom, #E8F5E9, #FFFFFF);"
+    };
+
+    /**
+     * What a tile shows for one bed.
+     */
+    record BedView(String id, int number, String residentId, String residentName, Gender gender) {
+        boolean isVacant() {
+            return residentId == null;
+        }
+    }
+
+    /**
+     * One room and its beds in bed-number order.
+     */
+    record RoomRow(int ward, int room, List<BedView> beds) {
+    }
+
+    private static final Comparator<BedView> BED_ORDER =
+        Comparator.comparingInt(BedView::number).thenComparing(BedView::id);
+    private static final Comparator<RoomRow> ROOM_ORDER =
+        Comparator.comparingInt(RoomRow::ward).thenComparingInt(RoomRow::room);
+
+    private final ObservableList<RoomRow> rows = FXCollections.observableArrayList();
+    private final Function<String, Resident> occupants;
+    private final Consumer<BedView> onBedClicked;
+
+    BedMap(ListView<RoomRow> view, Function<String, Resident> occupants, Consumer<BedView> onBedClicked) {
+        this.occupants = occupants;
+        this.onBedClicked = onBedClicked;
+        view.setItems(rows);
+        view.setCellFactory(v -> new RoomCell());
+    }
+
+    /**
+     * Replace the whole map.
+     */
+    void load(Collection<Bed> beds) {
+        Map<RoomRow, List<BedView>> rooms = new TreeMap<>(ROOM_ORDER);
+        for (Bed bed : beds) {
+            BedLocation loc = BedLocation.parse(bed.getId());
+            rooms.computeIfAbsent(roomOf(loc), k -> new ArrayList<>()).add(view(bed, loc));
+        }
+        List<RoomRow> loaded = new ArrayList<>(rooms.size());
+        rooms.forEach((key, list) -> {
+            list.sort(BED_ORDER);
+            loaded.add(new RoomRow(key.ward(), key.room(), List.copyOf(list)));
+        });
+        rows.setAll(loaded);
+    }
+
+    /**
+     * Redraw one bed.
+     *
+     * @param bed the bed's current state, or null if it no longer exists
+     */
+    void update(String bedId, Bed bed) {
+        BedLocation loc = BedLocation.parse(bedId);
+        RoomRow key = roomOf(loc);
+        int index = Collections.binarySearch(rows, key, ROOM_ORDER);
+        List<BedView> beds = index >= 0 ? new ArrayList<>(rows.get(index).beds()) : new ArrayList<>();
+        beds.removeIf(b -> b.id().equals(bedId));
+        if (bed != null) {
+            BedView view = view(bed, loc);
+            int at = Collections.binarySearch(beds, view, BED_ORDER);
+            beds.add(at >= 0 ? at : -at - 1, view);
+        }
+        if (index >= 0) {
+            if (beds.isEmpty()) {
+                rows.remove(index);
+            } else {
+                rows.set(index, new RoomRow(key.ward(), key.room(), List.copyOf(beds)));
+            }
+        } else if (!beds.isEmpty()) {
+            rows.add(-index - 1, new RoomRow(key.ward(), key.room(), List.copyOf(beds)));
+        }
+    }
+
+    private static RoomRow roomOf(BedLocation loc) {
+        return loc == null ? new RoomRow(OTHER, OTHER, List.of()) : new RoomRow(loc.ward(), loc.room(), List.of());
+    }
+
+    private BedView view(Bed bed, BedLocation loc) {
+        int number = loc == null ? 0 : loc.bed();
+        if (bed.isVacant()) {
+            return new BedView(bed.getId(), number, null, null, null);
+        }
+        Resident r = occupants.apply(bed.getResidentId());
+        return new BedView(bed.getId(), number, bed.getResidentId(),
+                           r != null ? r.getName() : null, r != null ? r.getGender() : null);
+    }
+
+    /**
+     * A room row: ward heading (on the first room of each ward), room label and bed tiles.
+     * Tiles are kept in a pool and reused when the cell shows another room.
+     */
+    private final class RoomCell extends ListCell<RoomRow> {
+        private final Label wardLabel = new Label();
+        private final Label roomLabel = new Label();
+        private final FlowPane tiles = new FlowPane(10, 10);
+        private final VBox root;
+        private final List<BedTile> pool = new ArrayList<>();
+
+        RoomCell() {
+            wardLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #0D47A1;");
+            roomLabel.setStyle("-fx-font-weight: bold; -fx-min-width: 100px; -fx-font-size: 13px;");
+            HBox room = new HBox(10, roomLabel, tiles);
+            room.setAlignment(Pos.CENTER_LEFT);
+            room.setStyle("-fx-background-color: #FAFAFA; -fx-padding: 8; -fx-background-radius: 6;");
+            root = new VBox(8, wardLabel, room);
+            listViewProperty().addListener((o, old, list) -> {
+                if (list != null) {
+                    tiles.prefWrapLengthProperty().bind(list.widthProperty().subtract(180));
+                }
+            });
+        }
+
+        @Override
+        protected void updateItem(RoomRow row, boolean empty) {
+            super.updateItem(row, empty);
+            if (empty || row == null) {
+                setGraphic(null);
+                return;
+            }
+            int index = getIndex();
+            boolean firstInWard = index == 0 || getListView().getItems().get(index - 1).ward() != row.ward();
+            wardLabel.setText(row.ward() == OTHER ? "🏢 Other beds" : "🏢 Ward " + row.ward());
+            wardLabel.setVisible(firstInWard);
+            wardLabel.setManaged(firstInWard);
+            roomLabel.setText(row.room() == OTHER ? "🚪 Unplaced:" : "🚪 Room " + row.room() + ":");
+            root.setStyle("-fx-border-width: 0 0 0 3; -fx-padding: 6 10;"
+                          + WARD_STYLES[row.ward() == OTHER ? 0 : Math.floorMod(row.ward() - 1, WARD_STYLES.length)]);
+
+            List<BedView> beds = row.beds();
+            while (pool.size() < beds.size()) {
+                pool.add(new BedTile());
+            }
+            if (tiles.getChildren().size() != beds.size()) {
+                tiles.getChildren().setAll(pool.subList(0, beds.size()));
+            }
+            for (int i = 0; i < beds.size(); i++) {
+                pool.get(i).show(beds.get(i));
+            }
+            setGraphic(root);
+        }
+    }
+
+    /**
+     * One bed: id, then occupant name, id and gender, or VACANT. Colour-coded by gender.
+     */
+    private final class BedTile extends VBox {
+        private final Label bedIdLabel = new Label();
+        private final Label nameLabel = new Label();
+        private final Label residentIdLabel = new Label();
+        private final Label genderLabel = new Label();
+        private BedView shown;
+
+        BedTile() {
+            super(5);
+            setAlignment(Pos.CENTER);
+            setMinSize(120, 100);
+            setMaxSize(120, 100);
+            bedIdLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 11px;");
+            nameLabel.setWrapText(true);
+            residentIdLabel.setStyle("-fx-font-size: 9px;");
+            genderLabel.setStyle("-fx-font-size: 9px; -fx-font-style: italic;");
+            getChildren().addAll(bedIdLabel, nameLabel, residentIdLabel, genderLabel);
+            setOnMouseClicked(e -> {
+                if (shown != null && !shown.isVacant()) {
+                    onBedClicked.accept(shown);
+                }
+            });
+        }
+
+        void show(BedView bed) {
+            shown = bed;
+            bedIdLabel.setText(bed.id());
+            boolean occupied = !bed.isVacant();
+            residentIdLabel.setVisible(occupied);
+            genderLabel.setVisible(occupied);
+            if (!occupied) {
+                setStyle(TILE_STYLE + "-fx-background-color: #e0e0e0;");
+                nameLabel.setText("VACANT");
+                nameLabel.setStyle("-fx-font-size: 10px; -fx-text-fill: #666;");
+                return;
+            }
+            // Color code by gender: Blue for Male, Red for Female
+            String bgColor = bed.gender() == null ? "#f5f5f5" : switch (bed.gender()) {
+                case MALE -> "#b3d9ff"; // Light blue
+                case FEMALE -> "#ffb3b3"; // Light red
+                case OTHER -> "#d9b3ff"; // Light purple
+            };
+            setStyle(TILE_STYLE + "-fx-background-color: " + bgColor + "; -fx-cursor: hand;");
+            nameLabel.setText(bed.residentName() != null ? bed.residentName() : "(unknown)");
+            nameLabel.setStyle("-fx-font-size: 11px; -fx-font-weight: bold;");
+            residentIdLabel.setText("[" + bed.residentId() + "]");
+            genderLabel.setText(bed.gender() != null ? bed.gender().toString() : "");
+        }
+    }
+}
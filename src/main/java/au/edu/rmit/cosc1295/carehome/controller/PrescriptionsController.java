@@ -8,7 +8,11 @@ import javafx.collections.ObservableList;
 import au.edu.rmit.cosc1295.carehome.app.AppContext;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.exceptions.AuthorizationException;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import au.edu.rmit.cosc1295.carehome.util.CommandRunner;
+import au.edu.rmit.cosc1295.carehome.util.FrameCoalescer;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 
 /**
  * Controller for Prescriptions View.
@@ -66,10 +70,9 @@ public class PrescriptionsController {
         residentBox2.getItems().setAll(residents);
         viewResidentBox.getItems().setAll(residents);
         
-        // Add listeners to refresh resident lists when combo boxes are opened
-        residentBox.setOnShowing(event -> refreshResidentLists());
-        residentBox2.setOnShowing(event -> refreshResidentLists());
-        viewResidentBox.setOnShowing(event -> refreshResidentLists());
+        // Keep the resident lists in step with the repository, one changed row at a time
+        ctx.residentRepo.subscribe(new FrameCoalescer<>(
+            RepositoryEvent::key, RepositoryEvent::merge, this::onResidentChanges));
         
         // Setup prescription table columns
         medicineColumn.setCellValueFactory(new PropertyValueFactory<>("medicine"));
@@ -103,29 +106,12 @@ public class PrescriptionsController {
     }
     
     /**
-     * Refresh resident lists in combo boxes to include newly added residents.
+     * Apply added, renamed or removed residents to the combo boxes.
      */
-    private void refreshResidentLists() {
-        var ctx = AppContext.get();
-        Resident currentSelection1 = residentBox.getValue();
-        Resident currentSelection2 = residentBox2.getValue();
-        Resident currentViewSelection = viewResidentBox.getValue();
-        
-        var residents = ctx.residentRepo.findAll();
-        residentBox.getItems().setAll(residents);
-        residentBox2.getItems().setAll(residents);
-        viewResidentBox.getItems().setAll(residents);
-        
-        // Restore previous selections if they still exist
-        if (currentSelection1 != null) {
-            residentBox.setValue(currentSelection1);
-        }
-        if (currentSelection2 != null) {
-            residentBox2.setValue(currentSelection2);
-        }
-        if (currentViewSelection != null) {
-            viewResidentBox.setValue(currentViewSelection);
-        }
+    private void onResidentChanges(List<RepositoryEvent<Resident>> events) {
+        ViewUpdates.applyTo(residentBox, events, Resident::getId);
+        ViewUpdates.applyTo(residentBox2, events, Resident::getId);
+        ViewUpdates.applyTo(viewResidentBox, events, Resident::getId);
     }
     
     @FXML 
@@ -202,38 +188,47 @@ public class PrescriptionsController {
             return;
         }
         
-        try {
+        showStatus("Recording administration...", "black");
+        CommandRunner.submit("administer-dose", () -> {
             // Check authorization (role + roster)
             ctx.authorizationService.checkAuthorization(currentUser, Role.NURSE);
-            
+
             // Administer dose
-            ctx.administrationService.administerDose(
-                currentUser.getId(), 
-                currentUser, 
+            return ctx.administrationService.administerDose(
+                currentUser.getId(),
+                currentUser,
                 r.getId(),
-                medicine, 
+                medicine,
                 dose,
                 prescriptionTime.isEmpty() ? null : prescriptionTime
             );
-            
-            showStatus("Medication administered to " + r.getName(), "green");
-            
-            // Clear fields
-            medicineField2.clear();
-            doseField2.clear();
-            prescriptionTimeField.clear();
-            
-            // Refresh view
-            viewResidentBox.setValue(r);
-            refreshPrescriptions();
-            
-        } catch (AuthorizationException e) {
-            showError("Authorization Error", e.getMessage());
-            showStatus("Authorization failed: " + e.getMessage(), "red");
-        } catch (Exception e) {
-            showError("Error", e.getMessage());
-            showStatus("Error: " + e.getMessage(), "red");
-        }
+        }).whenComplete((record, error) -> {
+            if (error == null) {
+                showStatus("Medication administered to " + r.getName(), "green");
+
+                // Clear fields
+                medicineField2.clear();
+                doseField2.clear();
+                prescriptionTimeField.clear();
+
+                // Refresh view
+                viewResidentBox.setValue(r);
+                refreshPrescriptions();
+                return;
+            }
+            Throwable e = CommandRunner.cause(error);
+            if (CommandRunner.stillRunning(e)) {
+                // Not cancelled: it may still be recorded, so do not invite a second dose
+                showStatus("Still saving the administration for " + r.getName()
+                    + "... refresh before recording it again", "darkorange");
+            } else if (e instanceof AuthorizationException) {
+                showError("Authorization Error", e.getMessage());
+                showStatus("Authorization failed: " + e.getMessage(), "red");
+            } else {
+                showError("Error", e.getMessage());
+                showStatus("Error: " + e.getMessage(), "red");
+            }
+        });
     }
     
     @FXML 
@@ -252,22 +247,13 @@ public class PrescriptionsController {
         
         var ctx = AppContext.get();
         
-        // Get prescriptions for this resident
-        ObservableList<Prescription> prescriptions = FXCollections.observableArrayList();
-        for (Prescription p : ctx.prescriptionRepo.findAll()) {
-            if (p.getResidentId().equals(r.getId())) {
-                prescriptions.add(p);
-            }
-        }
+        // Get prescriptions and administration records for this resident via the resident indexes
+        ObservableList<Prescription> prescriptions =
+            FXCollections.observableArrayList(ctx.prescriptionRepo.findByResidentId(r.getId()));
         prescriptionsTable.setItems(prescriptions);
         
-        // Get administration records for this resident
-        ObservableList<AdministrationRecord> adminRecords = FXCollections.observableArrayList();
-        for (AdministrationRecord rec : ctx.adminRepo.findAll()) {
-            if (rec.getResidentId().equals(r.getId())) {
-                adminRecords.add(rec);
-            }
-        }
+        ObservableList<AdministrationRecord> adminRecords =
+            FXCollections.observableArrayList(ctx.adminRepo.findByResidentId(r.getId()));
         adminTable.setItems(adminRecords);
     }
     
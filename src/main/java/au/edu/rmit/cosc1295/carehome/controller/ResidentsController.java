@@ -1,12 +1,19 @@
 package au.edu.rmit.cosc1295.carehome.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import javafx.scene.layout.*;
-import javafx.geometry.Pos;
 import au.edu.rmit.cosc1295.carehome.app.AppContext;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.exceptions.BedOccupiedException;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import au.edu.rmit.cosc1295.carehome.util.CommandRunner;
+import au.edu.rmit.cosc1295.carehome.util.FrameCoalescer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Controller for Residents View.
@@ -17,8 +24,10 @@ import au.edu.rmit.cosc1295.carehome.exceptions.BedOccupiedException;
  * - Moving residents between beds
  * - Visual display of ward/room/bed layout with color-coded gender indicators
  * 
- * Design: Uses observer pattern through JavaFX property bindings.
- * Updates UI in real-time when beds are occupied/vacated.
+ * Design: Uses observer pattern through repository change events.
+ * Updates UI in real-time when beds are occupied/vacated: each change
+ * redraws only the room row of the bed it affects (see {@link BedMap})
+ * and patches the combo box rows.
  */
 public class ResidentsController {
     @FXML private TextField newResidentName;
@@ -27,151 +36,98 @@ public class ResidentsController {
     @FXML private ComboBox<Bed> bedBox;
     @FXML private Label statusLabel;
     
-    // Ward/Room grids
-    @FXML private GridPane ward1Room1Grid;
-    @FXML private GridPane ward1Room2Grid;
-    @FXML private GridPane ward1Room3Grid;
-    @FXML private GridPane ward2Room1Grid;
-    @FXML private GridPane ward2Room2Grid;
+    // Ward/room/bed map, one virtualised row per room
+    @FXML private ListView<BedMap.RoomRow> bedMapList;
+    private BedMap bedMap;
+    
+    // Resident id -> resident, for the occupant labels; kept current from resident events
+    private final Map<String, Resident> residentCache = new HashMap<>();
+    // Beds to redraw on the next pass, filled from both repositories' events
+    private final Set<String> dirtyBeds = new LinkedHashSet<>();
+    private boolean redrawScheduled;
     
     @FXML 
     public void initialize() {
+        var ctx = AppContext.get();
+        
         // Initialize gender combo box
         newResidentGender.getItems().setAll(Gender.values());
         
-        // Load initial data
-        refreshAll();
-    }
-    
-    private void refreshAll() {
-        var ctx = AppContext.get();
-        residentBox.getItems().setAll(ctx.residentRepo.findAll());
+        // Load initial data once; after that only changed rows and beds are touched
+        var residents = ctx.residentRepo.findAll();
+        for (Resident r : residents) {
+            residentCache.put(r.getId(), r);
+        }
+        residentBox.getItems().setAll(residents);
         bedBox.getItems().setAll(ctx.bedRepo.findAll());
+        bedMap = new BedMap(bedMapList, residentCache::get, this::showResidentDetails);
+        bedMap.load(ctx.bedRepo.findAll());
         
-        // Refresh bed visualization
-        refreshBedLayout();
+        ctx.bedRepo.subscribe(new FrameCoalescer<>(
+            RepositoryEvent::key, RepositoryEvent::merge, this::onBedChanges));
+        ctx.residentRepo.subscribe(new FrameCoalescer<>(
+            RepositoryEvent::key, RepositoryEvent::merge, this::onResidentChanges));
     }
     
-    /**
-     * Refresh the visual bed layout showing occupancy and gender.
-     */
-    private void refreshBedLayout() {
-        var ctx = AppContext.get();
-        
-        // Clear all grids
-        ward1Room1Grid.getChildren().clear();
-        ward1Room2Grid.getChildren().clear();
-        ward1Room3Grid.getChildren().clear();
-        ward2Room1Grid.getChildren().clear();
-        ward2Room2Grid.getChildren().clear();
-        
-        // Populate beds
-        for (Bed bed : ctx.bedRepo.findAll()) {
-            VBox bedBox = createBedVisual(bed);
-            addBedToGrid(bed.getId(), bedBox);
+    private void onBedChanges(List<RepositoryEvent<Bed>> events) {
+        ViewUpdates.applyTo(bedBox, events, Bed::getId);
+        for (RepositoryEvent<Bed> event : events) {
+            dirtyBeds.add(event.key());
         }
+        scheduleRedraw();
     }
     
-    /**
-     * Create a visual representation of a bed with occupant info.
-     */
-    private VBox createBedVisual(Bed bed) {
-        VBox box = new VBox(5);
-        box.setAlignment(Pos.CENTER);
-        box.setMinSize(120, 100);
-        box.setMaxSize(120, 100);
-        box.setStyle("-fx-border-color: #666; -fx-border-width: 1; -fx-padding: 5; -fx-background-radius: 5;");
-        
-        // Bed ID label
-        Label bedIdLabel = new Label(bed.getId());
-        bedIdLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 11px;");
-        
-        if (bed.isVacant()) {
-            // Vacant bed
-            box.setStyle(box.getStyle() + "-fx-background-color: #e0e0e0;");
-            Label vacantLabel = new Label("VACANT");
-            vacantLabel.setStyle("-fx-font-size: 10px; -fx-text-fill: #666;");
-            box.getChildren().addAll(bedIdLabel, vacantLabel);
-        } else {
-            // Occupied bed
-            var ctx = AppContext.get();
-            var residentOpt = ctx.residentRepo.findById(bed.getResidentId());
-            if (residentOpt.isPresent()) {
-                Resident resident = residentOpt.get();
-                
-                // Color code by gender: Blue for Male, Red for Female
-                String bgColor = switch (resident.getGender()) {
-                    case MALE -> "#b3d9ff"; // Light blue
-                    case FEMALE -> "#ffb3b3"; // Light red
-                    case OTHER -> "#d9b3ff"; // Light purple
-                };
-                box.setStyle(box.getStyle() + "-fx-background-color: " + bgColor + ";");
-                
-                Label residentLabel = new Label(resident.getName());
-                residentLabel.setStyle("-fx-font-size: 11px; -fx-font-weight: bold;");
-                residentLabel.setWrapText(true);
-                
-                Label idLabel = new Label("[" + resident.getId() + "]");
-                idLabel.setStyle("-fx-font-size: 9px;");
-                
-                Label genderLabel = new Label(resident.getGender().toString());
-                genderLabel.setStyle("-fx-font-size: 9px; -fx-font-style: italic;");
-                
-                box.getChildren().addAll(bedIdLabel, residentLabel, idLabel, genderLabel);
-                
-                // Make clickable to show details
-                box.setOnMouseClicked(e -> showResidentDetails(resident, bed));
-                box.setStyle(box.getStyle() + "-fx-cursor: hand;");
+    private void onResidentChanges(List<RepositoryEvent<Resident>> events) {
+        ViewUpdates.applyTo(residentBox, events, Resident::getId);
+        // A resident's name and gender are drawn on their bed
+        for (RepositoryEvent<Resident> event : events) {
+            if (event.kind() == RepositoryEvent.Kind.REMOVED) {
+                residentCache.remove(event.key());
+            } else {
+                residentCache.put(event.key(), event.entity());
+            }
+            String bedId = event.entity().getBedId();
+            if (bedId != null) {
+                dirtyBeds.add(bedId);
             }
         }
-        
-        return box;
+        scheduleRedraw();
     }
     
     /**
-     * Add a bed visual to the appropriate grid based on ward/room/bed ID.
+     * Redraw dirty beds once, after both repositories' batches for this frame are in:
+     * an assignment saves the bed and then the resident, but should redraw the bed once.
      */
-    private void addBedToGrid(String bedId, VBox bedBox) {
-        // Parse bed ID format: W#-R#-B#
-        String[] parts = bedId.split("-");
-        if (parts.length != 3) return;
-        
-        int ward = Integer.parseInt(parts[0].substring(1));
-        int room = Integer.parseInt(parts[1].substring(1));
-        int bedNum = Integer.parseInt(parts[2].substring(1));
-        
-        GridPane targetGrid = null;
-        if (ward == 1) {
-            targetGrid = switch (room) {
-                case 1 -> ward1Room1Grid;
-                case 2 -> ward1Room2Grid;
-                case 3 -> ward1Room3Grid;
-                default -> null;
-            };
-        } else if (ward == 2) {
-            targetGrid = switch (room) {
-                case 1 -> ward2Room1Grid;
-                case 2 -> ward2Room2Grid;
-                default -> null;
-            };
+    private void scheduleRedraw() {
+        if (!redrawScheduled && !dirtyBeds.isEmpty()) {
+            redrawScheduled = true;
+            Platform.runLater(this::redrawDirtyBeds);
         }
-        
-        if (targetGrid != null) {
-            // Add to grid (arrange beds in a row)
-            targetGrid.add(bedBox, bedNum - 1, 0);
+    }
+    
+    private void redrawDirtyBeds() {
+        redrawScheduled = false;
+        var ctx = AppContext.get();
+        for (String bedId : dirtyBeds) {
+            bedMap.update(bedId, ctx.bedRepo.findById(bedId).orElse(null));
         }
+        dirtyBeds.clear();
     }
     
     /**
      * Show detailed information about a resident.
      */
-    private void showResidentDetails(Resident resident, Bed bed) {
+    private void showResidentDetails(BedMap.BedView bed) {
+        Resident resident = residentCache.get(bed.residentId());
+        if (resident == null) {
+            return;
+        }
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("Resident Details");
         alert.setHeaderText(resident.getName() + " [" + resident.getId() + "]");
         alert.setContentText(
             "Gender: " + resident.getGender() + "\n" +
-            "Bed: " + bed.getId() + "\n" +
+            "Bed: " + bed.id() + "\n" +
             "\nClick 'Move to Bed' above to relocate this resident."
         );
         alert.showAndWait();
@@ -195,25 +151,29 @@ public class ResidentsController {
             return;
         }
         
-        try {
-            Resident r = ctx.residentService.addResident(
-                ctx.getCurrentUser().getId(), 
-                name, 
-                gender
-            );
+        String staffId = ctx.getCurrentUser().getId();
+        statusLabel.setText("Adding " + name + "...");
+        statusLabel.setStyle("");
+        CommandRunner.submit("add-resident", () ->
+            ctx.residentService.addResident(staffId, name, gender)
+        ).whenComplete((r, error) -> {
+            if (error != null && CommandRunner.stillRunning(error)) {
+                statusLabel.setText("Still saving " + name + "... refresh shortly");
+                statusLabel.setStyle("-fx-text-fill: darkorange;");
+                return;
+            }
+            if (error != null) {
+                statusLabel.setText("Error: " + CommandRunner.cause(error).getMessage());
+                statusLabel.setStyle("-fx-text-fill: red;");
+                return;
+            }
             statusLabel.setText("Added resident: " + r.getName() + " [" + r.getId() + "]");
             statusLabel.setStyle("-fx-text-fill: green;");
             
             // Clear fields
             newResidentName.clear();
             newResidentGender.setValue(null);
-            
-            // Refresh
-            refreshAll();
-        } catch (Exception e) {
-            statusLabel.setText("Error: " + e.getMessage());
-            statusLabel.setStyle("-fx-text-fill: red;");
-        }
+        });
     }
     
     @FXML 
@@ -228,22 +188,27 @@ public class ResidentsController {
             return;
         }
         
-        try {
-            ctx.residentService.assignResidentToBed(
-                ctx.getCurrentUser().getId(), 
-                r.getId(), 
-                b.getId()
-            );
-            statusLabel.setText("Assigned " + r.getName() + " to " + b.getId());
-            statusLabel.setStyle("-fx-text-fill: green;");
-            refreshAll();
-        } catch (BedOccupiedException ex) {
-            statusLabel.setText("Error: Bed is already occupied!");
-            statusLabel.setStyle("-fx-text-fill: red;");
-        } catch (Exception ex) {
-            statusLabel.setText("Error: " + ex.getMessage());
-            statusLabel.setStyle("-fx-text-fill: red;");
-        }
+        String staffId = ctx.getCurrentUser().getId();
+        statusLabel.setText("Assigning " + r.getName() + "...");
+        statusLabel.setStyle("");
+        CommandRunner.submit("assign-bed", () ->
+            ctx.residentService.assignResidentToBed(staffId, r.getId(), b.getId())
+        ).whenComplete((ok, error) -> {
+            Throwable ex = error == null ? null : CommandRunner.cause(error);
+            if (ex == null) {
+                statusLabel.setText("Assigned " + r.getName() + " to " + b.getId());
+                statusLabel.setStyle("-fx-text-fill: green;");
+            } else if (CommandRunner.stillRunning(ex)) {
+                statusLabel.setText("Still saving " + r.getName() + "'s bed... refresh shortly");
+                statusLabel.setStyle("-fx-text-fill: darkorange;");
+            } else if (ex instanceof BedOccupiedException) {
+                statusLabel.setText("Error: Bed is already occupied!");
+                statusLabel.setStyle("-fx-text-fill: red;");
+            } else {
+                statusLabel.setText("Error: " + ex.getMessage());
+                statusLabel.setStyle("-fx-text-fill: red;");
+            }
+        });
     }
     
     @FXML 
@@ -258,21 +223,26 @@ public class ResidentsController {
             return;
         }
         
-        try {
-            ctx.residentService.moveResident(
-                ctx.getCurrentUser().getId(), 
-                r.getId(), 
-                b.getId()
-            );
-            statusLabel.setText("Moved " + r.getName() + " to " + b.getId());
-            statusLabel.setStyle("-fx-text-fill: green;");
-            refreshAll();
-        } catch (BedOccupiedException ex) {
-            statusLabel.setText("Error: Target bed is already occupied!");
-            statusLabel.setStyle("-fx-text-fill: red;");
-        } catch (Exception ex) {
-            statusLabel.setText("Error: " + ex.getMessage());
-            statusLabel.setStyle("-fx-text-fill: red;");
-        }
+        String staffId = ctx.getCurrentUser().getId();
+        statusLabel.setText("Moving " + r.getName() + "...");
+        statusLabel.setStyle("");
+        CommandRunner.submit("move-resident", () ->
+            ctx.residentService.moveResident(staffId, r.getId(), b.getId())
+        ).whenComplete((ok, error) -> {
+            Throwable ex = error == null ? null : CommandRunner.cause(error);
+            if (ex == null) {
+                statusLabel.setText("Moved " + r.getName() + " to " + b.getId());
+                statusLabel.setStyle("-fx-text-fill: green;");
+            } else if (CommandRunner.stillRunning(ex)) {
+                statusLabel.setText("Still moving " + r.getName() + "... refresh shortly");
+                statusLabel.setStyle("-fx-text-fill: darkorange;");
+            } else if (ex instanceof BedOccupiedException) {
+                statusLabel.setText("Error: Target bed is already occupied!");
+                statusLabel.setStyle("-fx-text-fill: red;");
+            } else {
+                statusLabel.setText("Error: " + ex.getMessage());
+                statusLabel.setStyle("-fx-text-fill: red;");
+            }
+        });
     }
 }
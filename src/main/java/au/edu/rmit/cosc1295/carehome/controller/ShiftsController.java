@@ -7,8 +7,13 @@ import javafx.geometry.Pos;
 import au.edu.rmit.cosc1295.carehome.app.AppContext;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.service.Rules;
+import au.edu.rmit.cosc1295.carehome.service.StaffRoster;
 import au.edu.rmit.cosc1295.carehome.exceptions.ShiftViolationException;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import au.edu.rmit.cosc1295.carehome.util.CommandRunner;
+import au.edu.rmit.cosc1295.carehome.util.FrameCoalescer;
 import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 /**
@@ -47,13 +52,14 @@ public class ShiftsController {
         var ctx = AppContext.get();
         
         // Initialize combo boxes
-        staffBox.getItems().setAll(ctx.staffRepo.findAll());
+        var staff = ctx.staffRepo.findAll();
+        staffBox.getItems().setAll(staff);
         dayBox.getItems().setAll(DayOfWeek.values());
-        viewStaffBox.getItems().setAll(ctx.staffRepo.findAll());
+        viewStaffBox.getItems().setAll(staff);
         
-        // Add listeners to refresh staff lists when combo boxes are opened
-        staffBox.setOnShowing(event -> refreshStaffLists());
-        viewStaffBox.setOnShowing(event -> refreshStaffLists());
+        // Keep the staff lists in step with the repository, one changed row at a time
+        ctx.staffRepo.subscribe(new FrameCoalescer<>(
+            RepositoryEvent::key, RepositoryEvent::merge, this::onStaffChanges));
         
         // Add listener to refresh when staff is selected
         staffBox.getSelectionModel().selectedItemProperty().addListener((o, ov, nv) -> {
@@ -67,23 +73,11 @@ public class ShiftsController {
     }
     
     /**
-     * Refresh staff lists in combo boxes to include newly added staff.
+     * Apply added, edited or removed staff to the combo boxes.
      */
-    private void refreshStaffLists() {
-        var ctx = AppContext.get();
-        Staff currentStaffSelection = staffBox.getValue();
-        Staff currentViewSelection = viewStaffBox.getValue();
-        
-        staffBox.getItems().setAll(ctx.staffRepo.findAll());
-        viewStaffBox.getItems().setAll(ctx.staffRepo.findAll());
-        
-        // Restore previous selections if they still exist
-        if (currentStaffSelection != null) {
-            staffBox.setValue(currentStaffSelection);
-        }
-        if (currentViewSelection != null) {
-            viewStaffBox.setValue(currentViewSelection);
-        }
+    private void onStaffChanges(List<RepositoryEvent<Staff>> events) {
+        ViewUpdates.applyTo(staffBox, events, Staff::getId);
+        ViewUpdates.applyTo(viewStaffBox, events, Staff::getId);
     }
     
     @FXML 
@@ -106,36 +100,52 @@ public class ShiftsController {
             return;
         }
         
+        LocalTime start;
+        LocalTime end;
         try {
-            LocalTime start = LocalTime.parse(startField.getText().trim());
-            LocalTime end = LocalTime.parse(endField.getText().trim());
-            
-            ctx.shiftService.assignShift(
-                ctx.getCurrentUser().getId(), 
-                s.getId(),
-                new Shift(d, start, end)
-            );
-            
-            statusLabel.setText("Shift assigned to " + s.getName());
-            statusLabel.setStyle("-fx-text-fill: green;");
-            
-            // Clear fields
-            startField.clear();
-            endField.clear();
-            
-            // Refresh view
-            viewStaffBox.setValue(s);
-            refresh();
-            
-        } catch (ShiftViolationException ex) {
-            alert("Shift Rule Violation", ex.getMessage());
-            statusLabel.setText("Rule violation: " + ex.getMessage());
-            statusLabel.setStyle("-fx-text-fill: red;");
-        } catch (Exception ex) {
+            start = LocalTime.parse(startField.getText().trim());
+            end = LocalTime.parse(endField.getText().trim());
+        } catch (DateTimeParseException ex) {
             alert("Invalid Input", "Please use HH:MM format for times (e.g., 08:00, 16:00)");
             statusLabel.setText("Invalid time format");
             statusLabel.setStyle("-fx-text-fill: red;");
+            return;
         }
+
+        String managerId = ctx.getCurrentUser().getId();
+        statusLabel.setText("Assigning shift...");
+        statusLabel.setStyle("");
+        CommandRunner.submit("assign-shift", () ->
+            ctx.shiftService.assignShift(managerId, s.getId(), new Shift(d, start, end))
+        ).whenComplete((ok, error) -> {
+            if (error == null) {
+                statusLabel.setText("Shift assigned to " + s.getName());
+                statusLabel.setStyle("-fx-text-fill: green;");
+
+                // Clear fields
+                startField.clear();
+                endField.clear();
+
+                // Refresh view
+                viewStaffBox.setValue(s);
+                refresh();
+                return;
+            }
+            Throwable ex = CommandRunner.cause(error);
+            if (CommandRunner.stillRunning(ex)) {
+                statusLabel.setText("Still saving the shift for " + s.getName() + "... refresh shortly");
+                statusLabel.setStyle("-fx-text-fill: darkorange;");
+                return;
+            }
+            if (ex instanceof ShiftViolationException) {
+                alert("Shift Rule Violation", ex.getMessage());
+                statusLabel.setText("Rule violation: " + ex.getMessage());
+            } else {
+                alert("Error", ex.getMessage());
+                statusLabel.setText("Error: " + ex.getMessage());
+            }
+            statusLabel.setStyle("-fx-text-fill: red;");
+        });
     }
     
     @FXML 
@@ -157,21 +167,19 @@ public class ShiftsController {
             return;
         }
         
-        List<Shift> shifts = ctx.shiftService.getShifts(s.getId());
+        StaffRoster roster = ctx.shiftService.getRoster(s.getId());
+        List<Shift> shifts = roster.shifts();
         
         // Update list
         for (Shift sh : shifts) {
             shiftsList.getItems().add(sh.toString() + " (" + sh.hours() + "h)");
         }
         
-        // Calculate statistics
-        long totalHours = shifts.stream().mapToLong(Shift::hours).sum();
-        totalShiftsLabel.setText(String.valueOf(shifts.size()));
-        weeklyHoursLabel.setText(totalHours + " / " + Rules.MAX_WEEKLY_HOURS);
+        // Statistics and compliance come straight from the roster's running totals
+        totalShiftsLabel.setText(String.valueOf(roster.size()));
+        weeklyHoursLabel.setText(roster.weeklyHours() + " / " + Rules.MAX_WEEKLY_HOURS);
         
-        // Check compliance
-        boolean compliant = checkCompliance(shifts);
-        if (compliant) {
+        if (roster.isCompliant()) {
             complianceLabel.setText("✓ Compliant");
             complianceLabel.setStyle("-fx-text-fill: green; -fx-font-weight: bold;");
         } else {
@@ -180,53 +188,13 @@ public class ShiftsController {
         }
         
         // Build weekly schedule grid
-        buildScheduleGrid(shifts);
-    }
-    
-    /**
-     * Check if shifts comply with all business rules.
-     */
-    private boolean checkCompliance(List<Shift> shifts) {
-        // Check weekly hours
-        long totalHours = shifts.stream().mapToLong(Shift::hours).sum();
-        if (totalHours > Rules.MAX_WEEKLY_HOURS) {
-            return false;
-        }
-        
-        // Check daily hours for each day
-        for (DayOfWeek day : DayOfWeek.values()) {
-            long dailyHours = shifts.stream()
-                .filter(s -> s.getDay() == day)
-                .mapToLong(Shift::hours)
-                .sum();
-            if (dailyHours > Rules.MAX_DAILY_HOURS) {
-                return false;
-            }
-        }
-        
-        // Check individual shift hours
-        for (Shift shift : shifts) {
-            if (shift.hours() > Rules.MAX_SHIFT_HOURS) {
-                return false;
-            }
-        }
-        
-        // Check for overlaps
-        for (int i = 0; i < shifts.size(); i++) {
-            for (int j = i + 1; j < shifts.size(); j++) {
-                if (shifts.get(i).overlaps(shifts.get(j))) {
-                    return false;
-                }
-            }
-        }
-        
-        return true;
+        buildScheduleGrid(roster);
     }
     
     /**
      * Build a visual grid showing shifts throughout the week.
      */
-    private void buildScheduleGrid(List<Shift> shifts) {
+    private void buildScheduleGrid(StaffRoster roster) {
         scheduleGrid.getChildren().clear();
         
         // Headers
@@ -242,9 +210,7 @@ public class ShiftsController {
             scheduleGrid.add(dayLabel, 0, row);
             
             // Shifts for this day
-            List<Shift> dayShifts = shifts.stream()
-                .filter(s -> s.getDay() == day)
-                .toList();
+            List<Shift> dayShifts = roster.shiftsOn(day);
             
             if (dayShifts.isEmpty()) {
                 Label noShiftLabel = new Label("No shifts");
@@ -253,7 +219,7 @@ public class ShiftsController {
                 scheduleGrid.add(new Label("-"), 2, row);
             } else {
                 VBox shiftsBox = new VBox(3);
-                long totalDayHours = 0;
+                long totalDayHours = roster.dailyHours(day);
                 
                 for (Shift shift : dayShifts) {
                     Label shiftLabel = new Label(
@@ -261,7 +227,6 @@ public class ShiftsController {
                     );
                     shiftLabel.setStyle("-fx-font-size: 11px;");
                     shiftsBox.getChildren().add(shiftLabel);
-                    totalDayHours += shift.hours();
                 }
                 
                 scheduleGrid.add(shiftsBox, 1, row);
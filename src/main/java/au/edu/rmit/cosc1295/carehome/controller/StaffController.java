@@ -7,6 +7,10 @@ import javafx.collections.FXCollections;
 import au.edu.rmit.cosc1295.carehome.app.AppContext;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.exceptions.AuthorizationException;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import au.edu.rmit.cosc1295.carehome.util.CommandRunner;
+import au.edu.rmit.cosc1295.carehome.util.FrameCoalescer;
+import java.util.List;
 
 /**
  * Controller for Staff View.
@@ -54,19 +58,23 @@ public class StaffController {
         );
         usernameColumn.setCellValueFactory(new PropertyValueFactory<>("username"));
         
-        // Load data
-        refreshAll();
-    }
-    
-    private void refreshAll() {
+        // Load data once; later changes arrive as repository events
         var ctx = AppContext.get();
         var allStaff = ctx.staffRepo.findAll();
-        
-        // Update combo box
         staffBox.getItems().setAll(allStaff);
-        
-        // Update table
         staffTable.setItems(FXCollections.observableArrayList(allStaff));
+        ctx.staffRepo.subscribe(new FrameCoalescer<>(
+            RepositoryEvent::key, RepositoryEvent::merge, this::onStaffChanges));
+    }
+    
+    /**
+     * Apply added, edited or removed staff to the combo box and table rows.
+     */
+    private void onStaffChanges(List<RepositoryEvent<Staff>> events) {
+        ViewUpdates.applyTo(staffBox, events, Staff::getId);
+        for (RepositoryEvent<Staff> event : events) {
+            event.applyTo(staffTable.getItems(), Staff::getId);
+        }
     }
     
     @FXML 
@@ -111,40 +119,38 @@ public class StaffController {
         }
         
         // Check if username already exists
-        for (Staff s : ctx.staffRepo.findAll()) {
-            if (s.getUsername().equals(username)) {
-                statusLabel.setText("Error: Username already exists");
+        if (ctx.staffRepo.isUsernameTaken(username, null)) {
+            statusLabel.setText("Error: Username already exists");
+            statusLabel.setStyle("-fx-text-fill: red;");
+            return;
+        }
+        
+        String managerId = ctx.getCurrentUser().getId();
+        statusLabel.setText("Adding staff...");
+        statusLabel.setStyle("");
+        CommandRunner.submit("add-staff", () ->
+            ctx.staffService.addStaff(managerId, name, role, username, password)
+        ).whenComplete((newStaff, error) -> {
+            if (error != null && CommandRunner.stillRunning(error)) {
+                statusLabel.setText("Still saving " + name + "... refresh the list shortly");
+                statusLabel.setStyle("-fx-text-fill: darkorange;");
+                return;
+            }
+            if (error != null) {
+                statusLabel.setText("Error: " + CommandRunner.cause(error).getMessage());
                 statusLabel.setStyle("-fx-text-fill: red;");
                 return;
             }
-        }
-        
-        try {
-            Staff newStaff = ctx.staffService.addStaff(
-                ctx.getCurrentUser().getId(),
-                name,
-                role,
-                username,
-                password
-            );
-            
-            statusLabel.setText("Added staff: " + newStaff.getName() + 
+            statusLabel.setText("Added staff: " + newStaff.getName() +
                 " [" + newStaff.getId() + "]");
             statusLabel.setStyle("-fx-text-fill: green;");
-            
+
             // Clear fields
             newStaffName.clear();
             newStaffRole.setValue(null);
             newStaffUsername.clear();
             newStaffPassword.clear();
-            
-            // Refresh
-            refreshAll();
-            
-        } catch (Exception e) {
-            statusLabel.setText("Error: " + e.getMessage());
-            statusLabel.setStyle("-fx-text-fill: red;");
-        }
+        });
     }
     
     @FXML 
@@ -181,13 +187,10 @@ public class StaffController {
         }
         
         // Check if new username conflicts with another user
-        for (Staff staff : ctx.staffRepo.findAll()) {
-            if (!staff.getId().equals(s.getId()) && 
-                staff.getUsername().equals(newUsername)) {
-                statusLabel.setText("Error: Username already taken by another staff member");
-                statusLabel.setStyle("-fx-text-fill: red;");
-                return;
-            }
+        if (ctx.staffRepo.isUsernameTaken(newUsername, s.getId())) {
+            statusLabel.setText("Error: Username already taken by another staff member");
+            statusLabel.setStyle("-fx-text-fill: red;");
+            return;
         }
         
         try {
@@ -205,9 +208,6 @@ public class StaffController {
             usernameField.clear();
             passwordField.clear();
             
-            // Refresh
-            refreshAll();
-            
         } catch (Exception e) {
             statusLabel.setText("Error: " + e.getMessage());
             statusLabel.setStyle("-fx-text-fill: red;");
@@ -0,0 +1,30 @@
+package au.edu.rmit.cosc1295.carehome.controller;
+
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import javafx.scene.control.ComboBox;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Applies batches of repository events to controls.
+ */
+final class ViewUpdates {
+    private ViewUpdates() {
+    }
+
+    /**
+     * Apply {@code events} to the items of {@code box}, keeping its current value. Entities
+     * are edited in place, so an update replaces the row even when it is the same object:
+     * that is what makes the list cell redraw its text.
+     */
+    static <T> void applyTo(ComboBox<T> box, List<RepositoryEvent<T>> events,
+                            Function<? super T, String> keyOf) {
+        T value = box.getValue();
+        for (RepositoryEvent<T> event : events) {
+            event.applyTo(box.getItems(), keyOf);
+        }
+        if (value != null && box.getValue() != value && box.getItems().contains(value)) {
+            box.setValue(value);
+        }
+    }
+}
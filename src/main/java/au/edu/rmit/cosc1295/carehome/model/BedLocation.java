@@ -0,0 +1,42 @@
+package au.edu.rmit.cosc1295.carehome.model;
+
+/**
+ * Where a bed is, as encoded in its id: {@code W<ward>-R<room>-B<bed>}, e.g. W1-R2-B3.
+ * Rooms are numbered within their ward and beds within their room.
+ */
+public record BedLocation(int ward, int room, int bed) implements Comparable<BedLocation>
+{
+  /**
+   * The location encoded in {@code bedId}, or null if the id is not in W#-R#-B# form.
+   */
+  public static BedLocation parse(String bedId)
+  {
+      if (bedId == null) return null;
+      String[] parts = bedId.split("-");
+      if (parts.length != 3
+              || !parts[0].startsWith("W") || !parts[1].startsWith("R") || !parts[2].startsWith("B"))
+          return null;
+      try {
+          return new BedLocation(Integer.parseInt(parts[0].substring(1)),
+                                 Integer.parseInt(parts[1].substring(1)),
+                                 Integer.parseInt(parts[2].substring(1)));
+      } catch (NumberFormatException e) {
+          return null;
+      }
+  }
+
+  /**
+   * Whether this bed is in the same room as {@code other}.
+   */
+  public boolean sameRoom(BedLocation other)
+  {
+      return ward == other.ward && room == other.room;
+  }
+
+  @Override public int compareTo(BedLocation o)
+  {
+      if (ward != o.ward) return Integer.compare(ward, o.ward);
+      if (room != o.room) return Integer.compare(room, o.room);
+      return Integer.compare(bed, o.bed);
+  }
+}
@@ -0,0 +1,242 @@
+package au.edu.rmit.cosc1295.carehome.model;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * When a prescription's doses are due, parsed from the free-text schedule a doctor enters.
+ *
+ * A schedule is an optional set of days followed by the times of day, for example:
+ * <ul>
+ *   <li>{@code 08:00, 14:00, 20:00} or {@code 8am 8pm} - every day at those times</li>
+ *   <li>{@code MON WED FRI 09:00}, {@code Mon-Fri 08:00}, {@code weekends 10:00}</li>
+ *   <li>{@code every 6 hours}, {@code q4h from 06:00} - from the anchor (default 00:00)
+ *       until midnight, every day</li>
+ *   <li>{@code daily} / {@code once daily} / {@code mane} (08:00), {@code nocte} (22:00),
+ *       {@code BD} (08:00, 20:00), {@code TDS} (08:00, 14:00, 20:00),
+ *       {@code QID} (08:00, 12:00, 16:00, 20:00)</li>
+ *   <li>{@code PRN} / {@code as needed} - no scheduled doses</li>
+ * </ul>
+ * Case, commas and semicolons do not matter.
+ */
+public record DoseSchedule(Set<DayOfWeek> days, List<LocalTime> times, boolean asNeeded)
+{
+  private static final Map<String, List<LocalTime>> SHORTHANDS = Map.of(
+      "od", times("08:00"), "mane", times("08:00"), "nocte", times("22:00"),
+      "bd", times("08:00", "20:00"), "bid", times("08:00", "20:00"),
+      "tds", times("08:00", "14:00", "20:00"), "tid", times("08:00", "14:00", "20:00"),
+      "qid", times("08:00", "12:00", "16:00", "20:00"));
+  private static final Map<String, Integer> PER_DAY = Map.of("once", 1, "twice", 2, "three", 3, "four", 4);
+  private static final List<String> DAY_NAMES =
+      List.of("mon", "tue", "wed", "thu", "fri", "sat", "sun");
+
+  public DoseSchedule
+  {
+      days = Collections.unmodifiableSet(days.isEmpty() ? EnumSet.noneOf(DayOfWeek.class) : EnumSet.copyOf(days));
+      times = List.copyOf(new TreeSet<>(times));
+  }
+
+  /**
+   * Parse a schedule in one of the forms above.
+   *
+   * @throws IllegalArgumentException naming the part that was not understood
+   */
+  public static DoseSchedule parse(String text)
+  {
+      if (text == null || text.isBlank()) throw new IllegalArgumentException("Schedule is empty");
+      List<String> tokens = new ArrayList<>(Arrays.asList(
+          text.trim().toLowerCase(Locale.ROOT).replaceAll("[,;/]", " ").split("\\s+")));
+      EnumSet<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+      SortedSet<LocalTime> times = new TreeSet<>();
+      boolean daily = false;
+      boolean asNeeded = false;
+      for (int i = 0; i < tokens.size(); i++) {
+          String t = tokens.get(i);
+          String next = i + 1 < tokens.size() ? tokens.get(i + 1) : "";
+          if (addDays(t, days)) continue;
+          LocalTime time = parseTime(t, next);
+          if (time != null) {
+              times.add(time);
+              if (next.equals("am") || next.equals("pm")) i++;
+          } else if (SHORTHANDS.containsKey(t)) {
+              times.addAll(SHORTHANDS.get(t));
+          } else if (PER_DAY.containsKey(t) && (next.equals("daily") || next.equals("a"))) {
+              times.addAll(perDay(PER_DAY.get(t)));
+              i += next.equals("a") ? 2 : 1; // "twice a day"
+          } else if (PER_DAY.containsKey(t) && next.equals("times")) {
+              times.addAll(perDay(PER_DAY.get(t)));
+              i += 2; // "three times daily" / "three times a day"
+              if (i < tokens.size() && tokens.get(i).equals("a")) i++;
+          } else if (t.equals("every") && next.equals("day")) {
+              daily = true;
+              i++;
+          } else if (t.equals("every") || t.matches("q\\d+h")) {
+              i = parseInterval(tokens, i, times);
+          } else if (t.equals("prn") || t.equals("as") && next.equals("needed")) {
+              asNeeded = true;
+              if (t.equals("as")) i++;
+          } else if (t.equals("at") && next.equals("night")) {
+              times.addAll(SHORTHANDS.get("nocte"));
+              i++;
+          } else if (t.equals("daily") || t.equals("day") || t.equals("at") || t.equals("and")) {
+              daily |= t.equals("daily");
+          } else {
+              throw new IllegalArgumentException("Unrecognised schedule '" + t + "' in: " + text);
+          }
+      }
+      if (asNeeded && !times.isEmpty())
+          throw new IllegalArgumentException("An as-needed schedule cannot also have dose times: " + text);
+      if (!asNeeded && times.isEmpty()) {
+          if (!daily) throw new IllegalArgumentException("No dose times in schedule: " + text);
+          times.addAll(SHORTHANDS.get("od"));
+      }
+      if (days.isEmpty()) days = EnumSet.allOf(DayOfWeek.class);
+      return new DoseSchedule(days, new ArrayList<>(times), asNeeded);
+  }
+
+  /**
+   * Like {@link #parse} but returns empty instead of throwing, for schedules stored before
+   * they were validated.
+   */
+  public static Optional<DoseSchedule> tryParse(String text)
+  {
+      try {
+          return Optional.of(parse(text));
+      } catch (IllegalArgumentException e) {
+          return Optional.empty();
+      }
+  }
+
+  /**
+   * Hand every dose time in [from, to) to {@code action}, in order.
+   */
+  public void forEachDose(LocalDateTime from, LocalDateTime to, Consumer<LocalDateTime> action)
+  {
+      if (times.isEmpty()) return;
+      for (LocalDate d = from.toLocalDate(); !d.atStartOfDay().isAfter(to); d = d.plusDays(1)) {
+          if (!days.contains(DayOfWeek.values()[d.getDayOfWeek().ordinal()])) continue;
+          for (LocalTime time : times) {
+              LocalDateTime at = d.atTime(time);
+              if (!at.isBefore(from) && at.isBefore(to)) action.accept(at);
+          }
+      }
+  }
+
+  @Override public String toString()
+  {
+      if (asNeeded) return "PRN";
+      StringBuilder sb = new StringBuilder();
+      if (days.size() < DayOfWeek.values().length) {
+          for (DayOfWeek d : days) sb.append(d).append(' ');
+      }
+      StringJoiner list = new StringJoiner(", ");
+      for (LocalTime time : times) list.add(time.toString());
+      return sb.append(list).toString();
+  }
+
+  private static boolean addDays(String t, Set<DayOfWeek> days)
+  {
+      switch (t) {
+          case "weekdays" -> days.addAll(EnumSet.range(DayOfWeek.MON, DayOfWeek.FRI));
+          case "weekends" -> days.addAll(EnumSet.range(DayOfWeek.SAT, DayOfWeek.SUN));
+          default -> {
+              String[] range = t.split("-");
+              if (range.length > 2) return false;
+              DayOfWeek first = day(range[0]);
+              DayOfWeek last = range.length == 2 ? day(range[1]) : first;
+              if (first == null || last == null) return false;
+              // Mon-Fri, or wrapping round the week as in Fri-Mon
+              for (int i = first.ordinal(); ; i = (i + 1) % 7) {
+                  days.add(DayOfWeek.values()[i]);
+                  if (i == last.ordinal()) break;
+              }
+          }
+      }
+      return true;
+  }
+
+  private static DayOfWeek day(String name)
+  {
+      if (name.length() < 3) return null;
+      int i = DAY_NAMES.indexOf(name.substring(0, 3));
+      String full = i < 0 ? null : java.time.DayOfWeek.values()[i].name().toLowerCase(Locale.ROOT);
+      return i >= 0 && full.startsWith(name) ? DayOfWeek.values()[i] : null;
+  }
+
+  /** HH:mm, H:mm, 8am, 8:30pm or "8 am"; null if {@code t} is not a time. */
+  private static LocalTime parseTime(String t, String next)
+  {
+      String text = t;
+      if (next.equals("am") || next.equals("pm")) text = t + next;
+      boolean am = text.endsWith("am");
+      boolean pm = text.endsWith("pm");
+      if (am || pm) text = text.substring(0, text.length() - 2);
+      if (!text.matches("\\d{1,2}(:\\d{2})?")) return null;
+      if (!am && !pm && !text.contains(":")) return null;
+      String[] hm = text.split(":");
+      int hour = Integer.parseInt(hm[0]);
+      int minute = hm.length > 1 ? Integer.parseInt(hm[1]) : 0;
+      if (am || pm) {
+          if (hour < 1 || hour > 12) throw new IllegalArgumentException("Invalid time: " + t);
+          hour = hour % 12 + (pm ? 12 : 0);
+      }
+      try {
+          return LocalTime.of(hour, minute);
+      } catch (java.time.DateTimeException e) {
+          throw new IllegalArgumentException("Invalid time: " + t);
+      }
+  }
+
+  /** "every 6 hours [from HH:mm]", "every 6h", "q6h [from HH:mm]"; returns the last token used. */
+  private static int parseInterval(List<String> tokens, int i, Set<LocalTime> times)
+  {
+      String t = tokens.get(i);
+      String amount;
+      if (t.equals("every")) {
+          if (++i >= tokens.size()) throw new IllegalArgumentException("'every' needs an interval, e.g. every 6 hours");
+          amount = tokens.get(i);
+          if (amount.matches("\\d+")) {
+              if (i + 1 < tokens.size() && tokens.get(i + 1).matches("h|hrs?|hours?")) i++;
+              else throw new IllegalArgumentException("'every' needs an interval in hours, e.g. every 6 hours");
+          } else if (amount.matches("\\d+h")) {
+              amount = amount.substring(0, amount.length() - 1);
+          } else {
+              throw new IllegalArgumentException("'every' needs an interval in hours, e.g. every 6 hours");
+          }
+      } else {
+          amount = t.substring(1, t.length() - 1);
+      }
+      int hours = Integer.parseInt(amount);
+      if (hours < 1 || hours > 24) throw new IllegalArgumentException("Interval must be 1 to 24 hours: " + t);
+      LocalTime anchor = LocalTime.MIDNIGHT;
+      if (i + 2 < tokens.size() && tokens.get(i + 1).equals("from")) {
+          String next = i + 3 < tokens.size() ? tokens.get(i + 3) : "";
+          anchor = parseTime(tokens.get(i + 2), next);
+          if (anchor == null) throw new IllegalArgumentException("Expected a time after 'from': " + tokens.get(i + 2));
+          i += next.equals("am") || next.equals("pm") ? 3 : 2;
+      }
+      for (int m = anchor.toSecondOfDay() / 60; m < 24 * 60; m += hours * 60) {
+          times.add(LocalTime.of(m / 60, m % 60));
+      }
+      return i;
+  }
+
+  private static List<LocalTime> perDay(int n)
+  {
+      return switch (n) {
+          case 1 -> SHORTHANDS.get("od");
+          case 2 -> SHORTHANDS.get("bd");
+          case 3 -> SHORTHANDS.get("tds");
+          default -> SHORTHANDS.get("qid");
+      };
+  }
+
+  private static List<LocalTime> times(String... hhmm)
+  {
+      List<LocalTime> list = new ArrayList<>();
+      for (String s : hhmm) list.add(LocalTime.parse(s));
+      return List.copyOf(list);
+  }
+}
@@ -1,8 +1,11 @@
 package au.edu.rmit.cosc1295.carehome.model;
 import java.time.LocalDateTime;
+import java.util.Optional;
 public class Prescription {
   private final String id,residentId,doctorId,medicine,dose,schedule;
   private final LocalDateTime createdAt;
+  // Parsed on first use unless the creator already had it; empty if the text does not parse
+  private Optional<DoseSchedule> doseSchedule;
   public Prescription(String id,String r,String d,String m,String dose,String sched)
   {
       this(id, r, d, m, dose, sched, LocalDateTime.now());
@@ -12,6 +15,14 @@ public class Prescription {
       this.id=id; residentId=r; doctorId=d; medicine=m;
       this.dose=dose; schedule=sched; this.createdAt=createdAt;
   }
+  /**
+   * A new prescription whose schedule text {@code sched} has already been parsed.
+   */
+  public Prescription(String id,String r,String d,String m,String dose,String sched, DoseSchedule parsed)
+  {
+      this(id, r, d, m, dose, sched);
+      doseSchedule = Optional.of(parsed);
+  }
   public String getId()
   {
 
@@ -41,6 +52,16 @@ public class Prescription {
   {
       return createdAt;
   }
+  /**
+   * The schedule parsed, or empty for text stored before schedules were validated that
+   * does not parse. Parsed at most once per prescription (a race only parses it twice).
+   */
+  public Optional<DoseSchedule> getDoseSchedule()
+  {
+      Optional<DoseSchedule> s = doseSchedule;
+      if (s == null) doseSchedule = s = DoseSchedule.tryParse(schedule);
+      return s;
+  }
   @Override public String toString()
   {
       return medicine+" "+dose+" @ "+schedule;
@@ -0,0 +1,238 @@
+package au.edu.rmit.cosc1295.carehome.repository;
+
+import au.edu.rmit.cosc1295.carehome.model.AdministrationRecord;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Column store behind {@link InMemoryAdministrationRepository}: one primitive array per
+ * field instead of one object per dose.
+ *
+ * Resident, nurse, medicine, dose and prescription-time strings are dictionary-encoded
+ * to int codes (-1 for null); the timestamp is kept as epoch seconds plus nanos, both
+ * taken as UTC. Rows live in fixed-size chunks, so growing never copies existing rows,
+ * and a row costs about 44 bytes including its slot in the per-resident row lists.
+ * {@link AdministrationRecord}s are built on demand and are copies: changing one does
+ * not change the store.
+ *
+ * Rows are only appended. Callers must not append an id twice; the repository never
+ * does, since its loads cover disjoint time ranges and new ids are unique.
+ *
+ * Thread safety: appends take the write lock, everything else the read lock.
+ */
+final class DoseColumns {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    private static final class Chunk {
+        final long[] id = new long[CHUNK_ROWS];
+        final long[] second = new long[CHUNK_ROWS];
+        final int[] nano = new int[CHUNK_ROWS];
+        final int[] resident = new int[CHUNK_ROWS];
+        final int[] nurse = new int[CHUNK_ROWS];
+        final int[] medicine = new int[CHUNK_ROWS];
+        final int[] dose = new int[CHUNK_ROWS];
+        final int[] prescriptionTime = new int[CHUNK_ROWS];
+    }
+
+    /** Codes assigned in first-seen order. */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        int lookup(String value) {
+            Integer code = value == null ? null : codes.get(value);
+            return code != null ? code : -1;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /** Rows of one resident, in append order. */
+    private static final class RowList {
+        int[] rows = new int[4];
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final Dictionary residents = new Dictionary();
+    private final Dictionary nurses = new Dictionary();
+    private final Dictionary medicines = new Dictionary();
+    private final Dictionary doses = new Dictionary();
+    private final Dictionary prescriptionTimes = new Dictionary();
+    private final List<RowList> byResident = new ArrayList<>();
+    private int size;
+
+    void append(long id, AdministrationRecord r) {
+        lock.writeLock().lock();
+        try {
+            if ((size & CHUNK_MASK) == 0) {
+                chunks.add(new Chunk());
+            }
+            Chunk c = chunks.get(size >>> CHUNK_BITS);
+            int i = size & CHUNK_MASK;
+            LocalDateTime ts = r.getTimestamp();
+            c.id[i] = id;
+            c.second[i] = ts.toEpochSecond(ZoneOffset.UTC);
+            c.nano[i] = ts.getNano();
+            c.resident[i] = residents.encode(r.getResidentId());
+            c.nurse[i] = nurses.encode(r.getNurseId());
+            c.medicine[i] = medicines.encode(r.getMedicine());
+            c.dose[i] = doses.encode(r.getDose());
+            c.prescriptionTime[i] = prescriptionTimes.encode(r.getPrescriptionTime());
+            if (c.resident[i] >= 0) {
+                while (byResident.size() < residents.size()) {
+                    byResident.add(new RowList());
+                }
+                byResident.get(c.resident[i]).add(size);
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records of one resident with a timestamp in [from, to), in append order. Null
+     * bounds are open.
+     */
+    List<AdministrationRecord> forResident(String residentId, LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            int code = residents.lookup(residentId);
+            if (code < 0 || code >= byResident.size()) {
+                return new ArrayList<>();
+            }
+            RowList rows = byResident.get(code);
+            List<AdministrationRecord> result = new ArrayList<>(rows.size);
+            for (int k = 0; k < rows.size; k++) {
+                int row = rows.rows[k];
+                Chunk c = chunks.get(row >>> CHUNK_BITS);
+                int i = row & CHUNK_MASK;
+                if (inRange(c.second[i], c.nano[i], from, to)) {
+                    result.add(view(c, i));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Doses given in [from, to) per medicine, most given first. Null bounds are open.
+     * Reads only the timestamp and medicine columns.
+     */
+    Map<String, Integer> countByMedicine(LocalDateTime from, LocalDateTime to) {
+        lock.readLock().lock();
+        try {
+            long fromSecond = from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC);
+            long toSecond = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+            int[] counts = new int[medicines.size()];
+            for (int ci = 0; ci < chunks.size(); ci++) {
+                Chunk c = chunks.get(ci);
+                int rows = Math.min(CHUNK_ROWS, size - (ci << CHUNK_BITS));
+                for (int i = 0; i < rows; i++) {
+                    long s = c.second[i];
+                    // Whole seconds strictly inside the range need no nano comparison
+                    boolean in = s > fromSecond && s < toSecond
+                        || (s == fromSecond || s == toSecond) && inRange(s, c.nano[i], from, to);
+                    if (in && c.medicine[i] >= 0) {
+                        counts[c.medicine[i]]++;
+                    }
+                }
+            }
+            Integer[] order = new Integer[counts.length];
+            for (int m = 0; m < order.length; m++) {
+                order[m] = m;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int m : order) {
+                if (counts[m] > 0) {
+                    result.put(medicines.decode(m), counts[m]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Every row as (decimal id, record), in append order.
+     */
+    void forEach(BiConsumer<? super String, ? super AdministrationRecord> action) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < size; row++) {
+                Chunk c = chunks.get(row >>> CHUNK_BITS);
+                int i = row & CHUNK_MASK;
+                action.accept(String.valueOf(c.id[i]), view(c, i));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private AdministrationRecord view(Chunk c, int i) {
+        return new AdministrationRecord(residents.decode(c.resident[i]), nurses.decode(c.nurse[i]),
+                                        medicines.decode(c.medicine[i]), doses.decode(c.dose[i]),
+                                        prescriptionTimes.decode(c.prescriptionTime[i]),
+                                        LocalDateTime.ofEpochSecond(c.second[i], c.nano[i], ZoneOffset.UTC));
+    }
+
+    private static boolean inRange(long second, int nano, LocalDateTime from, LocalDateTime to) {
+        return (from == null || compare(second, nano, from) >= 0) && (to == null || compare(second, nano, to) < 0);
+    }
+
+    private static int compare(long second, int nano, LocalDateTime t) {
+        int c = Long.compare(second, t.toEpochSecond(ZoneOffset.UTC));
+        return c != 0 ? c : Integer.compare(nano, t.getNano());
+    }
+}
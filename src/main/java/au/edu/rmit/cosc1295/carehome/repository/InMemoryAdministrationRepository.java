@@ -3,50 +3,268 @@ import au.edu.rmit.cosc1295.carehome.model.AdministrationRecord;
 import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-public class InMemoryAdministrationRepository extends InMemoryRepository<AdministrationRecord> {
+/**
+ * Administration (dose) history.
+ *
+ * Only the recent window configured by carehome.history.eagerDays is loaded at startup.
+ * Older records can be pulled into memory page by page with {@link #loadOlder(int)}, or
+ * iterated straight from the database with {@link #streamHistory} without being cached.
+ *
+ * Design: dose history is by far the largest table and is only ever appended to, so it
+ * is not kept as one object per row like the other repositories. Records are stored in
+ * a {@link DoseColumns} column store, with the repeated strings dictionary-encoded, and
+ * {@link AdministrationRecord}s are built when a query returns them. Records are also
+ * indexed by resident, so a resident's history costs O(records for that resident), and
+ * reports such as {@link #countByMedicine} scan the primitive columns directly.
+ *
+ * Loading is lazy and published as {@link RepositoryEvent}s, as in
+ * {@link InMemoryRepository}; records are only ever ADDED.
+ */
+public class InMemoryAdministrationRepository {
+    private static final String TABLE = "administration_records";
+    private static final String COLUMNS = "id, resident_id, nurse_id, medicine, dose, timestamp";
     
-    public InMemoryAdministrationRepository() {
-        loadFromDatabase();
+    private final DoseColumns columns = new DoseColumns();
+    private final List<Consumer<? super RepositoryEvent<AdministrationRecord>>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+    private volatile LocalDateTime loadedFrom;
+    private KeysetCursor<Map.Entry<String, AdministrationRecord>> olderCursor;
+    
+    /**
+     * Load the recent window if that has not happened yet, waiting for a load already
+     * under way on another thread.
+     *
+     * @return the number of records now in memory
+     */
+    public int ensureLoaded() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    loadFromDatabase();
+                    loaded = true;
+                }
+            }
+        }
+        return columns.size();
     }
     
     private void loadFromDatabase() {
+        loadedFrom = KeysetCursor.eagerWindowStart();
+        try (Stream<Map.Entry<String, AdministrationRecord>> rows = KeysetCursor.stream(
+                 new KeysetCursor<>(TABLE, COLUMNS, "timestamp", loadedFrom, null, false,
+                                    KeysetCursor.PAGE_SIZE, InMemoryAdministrationRepository::mapEntry))) {
+            rows.forEach(e -> add(e.getKey(), e.getValue()));
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void add(String id, AdministrationRecord r) {
+        columns.append(Long.parseLong(id), r);
+        publish(new RepositoryEvent<>(RepositoryEvent.Kind.ADDED, id, r, version.incrementAndGet()));
+    }
+    
+    /**
+     * Register {@code listener} for every later change. Returns a handle that removes it.
+     */
+    public Runnable subscribe(Consumer<? super RepositoryEvent<AdministrationRecord>> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+    
+    private void publish(RepositoryEvent<AdministrationRecord> event) {
+        for (Consumer<? super RepositoryEvent<AdministrationRecord>> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                // A broken view must not fail the write that has already happened
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Monotonic counter bumped by every record added.
+     */
+    public long version() {
+        return version.get();
+    }
+    
+    /**
+     * All administration records for a resident, oldest first.
+     */
+    public List<AdministrationRecord> findByResidentId(String residentId) {
+        return findByResidentIdBetween(residentId, null, null);
+    }
+    
+    /**
+     * Administration records for a resident in [from, to), oldest first. Either bound may be
+     * null. The in-memory window is served from the resident index; anything older than the
+     * loaded window is read with an indexed query on (resident_id, timestamp).
+     */
+    public List<AdministrationRecord> findByResidentIdBetween(String residentId, LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        List<AdministrationRecord> result = new ArrayList<>();
+        if (loadedFrom != null && (from == null || from.isBefore(loadedFrom))) {
+            LocalDateTime sqlTo = to == null || to.isAfter(loadedFrom) ? loadedFrom : to;
+            result.addAll(queryByResident(residentId, from, sqlTo));
+        }
+        result.addAll(columns.forResident(residentId, from, to));
+        result.sort(Comparator.comparing(AdministrationRecord::getTimestamp));
+        return result;
+    }
+    
+    private List<AdministrationRecord> queryByResident(String residentId, LocalDateTime from, LocalDateTime to) {
+        String sql = "SELECT " + COLUMNS + " FROM " + TABLE + " WHERE resident_id = ?"
+            + (from != null ? " AND timestamp >= ? AND timestamp < ?" : " AND (timestamp < ? OR timestamp IS NULL)")
+            + " ORDER BY timestamp NULLS FIRST, id";
+        List<AdministrationRecord> rows = new ArrayList<>();
         try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM administration_records")) {
-            
-            while (rs.next()) {
-                String id = String.valueOf(rs.getInt("id"));
-                String residentId = rs.getString("resident_id");
-                String nurseId = rs.getString("nurse_id");
-                String medicine = rs.getString("medicine");
-                String dose = rs.getString("dose");
-                Timestamp timestamp = rs.getTimestamp("timestamp");
-                LocalDateTime administeredAt = timestamp != null ? timestamp.toLocalDateTime() : LocalDateTime.now();
-                
-                AdministrationRecord record = new AdministrationRecord(residentId, nurseId, medicine, dose, administeredAt);
-                store.put(id, record);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setString(i++, residentId);
+            if (from != null) {
+                ps.setTimestamp(i++, Timestamp.valueOf(from));
+            }
+            ps.setTimestamp(i, Timestamp.valueOf(to));
+            ps.setFetchSize(KeysetCursor.PAGE_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(map(rs));
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return rows;
     }
     
+    private static Map.Entry<String, AdministrationRecord> mapEntry(ResultSet rs) throws SQLException {
+        return new SimpleImmutableEntry<>(String.valueOf(rs.getLong("id")), map(rs));
+    }
+    
+    private static AdministrationRecord map(ResultSet rs) throws SQLException {
+        return new AdministrationRecord(
+            rs.getString("resident_id"),
+            rs.getString("nurse_id"),
+            rs.getString("medicine"),
+            rs.getString("dose"),
+            KeysetCursor.time(rs, "timestamp"));
+    }
+    
+    /**
+     * Doses given in [from, to) per medicine, most given first, over the records in
+     * memory. Null bounds are open.
+     */
+    public Map<String, Integer> countByMedicine(LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        return columns.countByMedicine(from, to);
+    }
+    
+    /**
+     * Every record in memory as (id, record), in the order they were added.
+     */
+    public void forEachEntry(BiConsumer<? super String, ? super AdministrationRecord> action) {
+        ensureLoaded();
+        columns.forEach(action);
+    }
+    
+    /**
+     * Fill the repository from {@code entities} (a snapshot taken when the loaded window
+     * started at {@code from}, null for the whole table) instead of the database. Does
+     * nothing and returns false if it has already been loaded.
+     */
+    public boolean restore(Map<String, AdministrationRecord> entities, LocalDateTime from) {
+        synchronized (loadLock) {
+            if (loaded) {
+                return false;
+            }
+            entities.forEach(this::add);
+            loadedFrom = from;
+            loaded = true;
+            return true;
+        }
+    }
+    
+    /**
+     * Oldest timestamp guaranteed to be in memory, or null if the whole table is loaded.
+     */
+    public LocalDateTime getLoadedFrom() {
+        ensureLoaded();
+        return loadedFrom;
+    }
+    
+    /**
+     * Pull about {@code maxRows} records older than the loaded window into memory, newest
+     * first. Returns the number of records added; 0 means all history is loaded.
+     *
+     * A page only stops between two timestamps, so it may run past {@code maxRows} to
+     * finish the records sharing its oldest one: queries for older history ask for
+     * {@code timestamp < loadedFrom} and would never see the rest of that group.
+     */
+    public synchronized int loadOlder(int maxRows) {
+        ensureLoaded();
+        if (loadedFrom == null) {
+            return 0;
+        }
+        if (olderCursor == null) {
+            olderCursor = new KeysetCursor<>(TABLE, COLUMNS, "timestamp", null, loadedFrom, true,
+                                             Math.min(maxRows, KeysetCursor.PAGE_SIZE),
+                                             InMemoryAdministrationRepository::mapEntry);
+        }
+        int added = 0;
+        LocalDateTime oldest = loadedFrom;
+        Map.Entry<String, AdministrationRecord> e;
+        // Undated rows all map to NO_TIME, so they too come in together
+        while ((e = olderCursor.peek()) != null
+               && (added < maxRows || e.getValue().getTimestamp().equals(oldest))) {
+            olderCursor.poll();
+            add(e.getKey(), e.getValue());
+            oldest = e.getValue().getTimestamp();
+            added++;
+        }
+        // Published once the whole group is in memory
+        loadedFrom = e == null || KeysetCursor.NO_TIME.equals(oldest) ? null : oldest;
+        return added;
+    }
+    
+    /**
+     * Lazily iterate administration records in time order straight from the database.
+     * Rows are fetched a page at a time and are not added to the in-memory store.
+     *
+     * @param from inclusive lower bound, or null
+     * @param to   exclusive upper bound, or null
+     */
+    public Stream<AdministrationRecord> streamHistory(LocalDateTime from, LocalDateTime to) {
+        return KeysetCursor.stream(new KeysetCursor<>(TABLE, COLUMNS, "timestamp", from, to, false,
+                                                      KeysetCursor.PAGE_SIZE,
+                                                      InMemoryAdministrationRepository::map));
+    }
+    
+    /**
+     * @param id a number from {@link au.edu.rmit.cosc1295.carehome.util.Ids#nextLong}, in
+     *           decimal; it is also the row's primary key
+     */
     public void save(String id, AdministrationRecord r) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO administration_records (resident_id, nurse_id, medicine, dose, timestamp) " +
-                 "VALUES (?, ?, ?, ?, ?)",
-                 Statement.RETURN_GENERATED_KEYS)) {
-            
-            pstmt.setString(1, r.getResidentId());
-            pstmt.setString(2, r.getNurseId());
-            pstmt.setString(3, r.getMedicine());
-            pstmt.setString(4, r.getDose());
-            pstmt.setTimestamp(5, Timestamp.valueOf(r.getTimestamp()));
-            pstmt.executeUpdate();
+        ensureLoaded();
+        try {
+            DatabaseManager.write(
+                "INSERT INTO administration_records (id, resident_id, nurse_id, medicine, dose, timestamp) " +
+                "VALUES (?, ?, ?, ?, ?, ?)",
+                Long.parseLong(id), r.getResidentId(), r.getNurseId(), r.getMedicine(), r.getDose(),
+                Timestamp.valueOf(r.getTimestamp()));
             
-            store.put(id, r);
+            add(id, r);
         } catch (SQLException e) {
             e.printStackTrace();
         }
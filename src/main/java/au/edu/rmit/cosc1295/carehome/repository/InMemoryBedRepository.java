@@ -1,15 +1,23 @@
 package au.edu.rmit.cosc1295.carehome.repository;
 import au.edu.rmit.cosc1295.carehome.model.Bed;
 import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import au.edu.rmit.cosc1295.carehome.util.SqlWrite;
+import au.edu.rmit.cosc1295.carehome.util.UnitOfWork;
 import java.sql.*;
+import java.util.Optional;
 
 public class InMemoryBedRepository extends InMemoryRepository<Bed> {
+    public static final String BY_RESIDENT = "residentId";
+    private static final String MERGE_SQL = "MERGE INTO beds (id, resident_id) KEY (id) VALUES (?, ?)";
+    private static final String CLAIM_SQL = "UPDATE beds SET resident_id = ? WHERE id = ? AND resident_id IS NULL";
+    private static final String RELEASE_SQL = "UPDATE beds SET resident_id = NULL WHERE id = ? AND resident_id = ?";
     
     public InMemoryBedRepository() {
-        loadFromDatabase();
+        defineIndex(BY_RESIDENT, Bed::getResidentId);
     }
     
-    private void loadFromDatabase() {
+    @Override
+    protected void loadFromDatabase() {
         try (Connection conn = DatabaseManager.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM beds")) {
@@ -22,25 +30,83 @@ public class InMemoryBedRepository extends InMemoryRepository<Bed> {
                 if (residentId != null) {
                     bed.assignResident(residentId);
                 }
-                store.put(id, bed);
+                put(id, bed);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
     
+    /**
+     * The bed currently occupied by a resident, if any.
+     */
+    public Optional<Bed> findByResidentId(String residentId) {
+        return findOneBy(BY_RESIDENT, residentId);
+    }
+    
     public void save(Bed b) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "MERGE INTO beds (id, resident_id) KEY (id) VALUES (?, ?)")) {
-            
-            pstmt.setString(1, b.getId());
-            pstmt.setString(2, b.getResidentId());
-            pstmt.executeUpdate();
+        withLock(b.getId(), () -> {
+            try {
+                DatabaseManager.write(MERGE_SQL, b.getId(), b.getResidentId());
             
-            store.put(b.getId(), b);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+                put(b.getId(), b);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    /**
+     * Add to {@code uow} the claim of bed {@code b} for {@code residentId}. The update only
+     * applies if the database still has the bed vacant, and the unit fails to commit if it
+     * does not; once committed the bed is assigned in memory.
+     */
+    public void claim(UnitOfWork uow, Bed b, String residentId) {
+        uow.expect(new SqlWrite(CLAIM_SQL, residentId, b.getId()), 1)
+           .onCommit(() -> withLock(b.getId(), () -> {
+               b.assignResident(residentId);
+               put(b.getId(), b);
+           }));
+    }
+    
+    /**
+     * Add to {@code uow} the release of bed {@code b}, conditional on {@code residentId}
+     * still being in it; once committed the bed is vacated in memory.
+     */
+    public void release(UnitOfWork uow, Bed b, String residentId) {
+        uow.expect(new SqlWrite(RELEASE_SQL, b.getId(), residentId), 1)
+           .onCommit(() -> withLock(b.getId(), () -> {
+               b.vacate();
+               put(b.getId(), b);
+           }));
+    }
+    
+    /**
+     * Re-read one bed's occupant from the database, e.g. after a conditional update found
+     * it different from the in-memory copy.
+     */
+    public void reload(String bedId) {
+        withLock(bedId, () -> {
+            try (Connection conn = DatabaseManager.getConnection();
+                 PreparedStatement ps = conn.prepareStatement("SELECT resident_id FROM beds WHERE id = ?")) {
+                ps.setString(1, bedId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        delete(bedId);
+                        return;
+                    }
+                    Bed b = findById(bedId).orElseGet(() -> new Bed(bedId));
+                    String residentId = rs.getString(1);
+                    if (residentId == null) {
+                        b.vacate();
+                    } else {
+                        b.assignResident(residentId);
+                    }
+                    put(bedId, b);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
     }
 }
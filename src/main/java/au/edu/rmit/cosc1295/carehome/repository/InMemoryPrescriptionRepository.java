@@ -3,54 +3,161 @@ import au.edu.rmit.cosc1295.carehome.model.Prescription;
 import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
 
+/**
+ * Prescriptions, loaded the same way as administration history: the window configured
+ * by carehome.history.eagerDays at startup, older pages via {@link #loadOlder(int)}, and
+ * uncached iteration via {@link #streamHistory}.
+ */
 public class InMemoryPrescriptionRepository extends InMemoryRepository<Prescription> {
+    private static final String TABLE = "prescriptions";
+    private static final String COLUMNS = "id, resident_id, doctor_id, medicine, dose, schedule_info, created_at";
+    
+    public static final String BY_RESIDENT = "residentId";
+    
+    private volatile LocalDateTime loadedFrom;
+    private KeysetCursor<Prescription> olderCursor;
     
     public InMemoryPrescriptionRepository() {
-        loadFromDatabase();
+        defineIndex(BY_RESIDENT, Prescription::getResidentId);
+    }
+    
+    @Override
+    protected void loadFromDatabase() {
+        loadedFrom = KeysetCursor.eagerWindowStart();
+        try (Stream<Prescription> rows = streamHistory(loadedFrom, null)) {
+            rows.forEach(p -> put(p.getId(), p));
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
     }
     
-    private void loadFromDatabase() {
+    /**
+     * All prescriptions for a resident, oldest first. Prescriptions older than the loaded
+     * window are read with an indexed query on resident_id.
+     */
+    public List<Prescription> findByResidentId(String residentId) {
+        ensureLoaded();
+        List<Prescription> result = new ArrayList<>();
+        if (loadedFrom != null) {
+            result.addAll(queryOlderByResident(residentId));
+        }
+        result.addAll(findBy(BY_RESIDENT, residentId));
+        result.sort(Comparator.comparing(Prescription::getCreatedAt));
+        return result;
+    }
+    
+    private List<Prescription> queryOlderByResident(String residentId) {
+        List<Prescription> rows = new ArrayList<>();
         try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM prescriptions")) {
-            
-            while (rs.next()) {
-                String id = String.valueOf(rs.getInt("id"));
-                String residentId = rs.getString("resident_id");
-                String doctorId = rs.getString("doctor_id");
-                String medicine = rs.getString("medicine");
-                String dose = rs.getString("dose");
-                String schedule = rs.getString("schedule_info");
-                Timestamp timestamp = rs.getTimestamp("created_at");
-                LocalDateTime createdAt = timestamp != null ? timestamp.toLocalDateTime() : LocalDateTime.now();
-                
-                Prescription prescription = new Prescription(id, residentId, doctorId, medicine, dose, schedule, createdAt);
-                store.put(id, prescription);
+             PreparedStatement ps = conn.prepareStatement(
+                 "SELECT " + COLUMNS + " FROM " + TABLE +
+                 " WHERE resident_id = ? AND (created_at < ? OR created_at IS NULL)" +
+                 " ORDER BY created_at NULLS FIRST, id")) {
+            ps.setString(1, residentId);
+            ps.setTimestamp(2, Timestamp.valueOf(loadedFrom));
+            ps.setFetchSize(KeysetCursor.PAGE_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(map(rs));
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return rows;
+    }
+    
+    private static Prescription map(ResultSet rs) throws SQLException {
+        return new Prescription(
+            String.valueOf(rs.getLong("id")),
+            rs.getString("resident_id"),
+            rs.getString("doctor_id"),
+            rs.getString("medicine"),
+            rs.getString("dose"),
+            rs.getString("schedule_info"),
+            KeysetCursor.time(rs, "created_at"));
     }
     
+    /**
+     * Restore from a snapshot taken when the loaded window started at {@code from} (null
+     * for the whole table). See {@link InMemoryRepository#restore(Map)}.
+     */
+    public boolean restore(Map<String, Prescription> entities, LocalDateTime from) {
+        return restore(entities, () -> loadedFrom = from);
+    }
+    
+    /**
+     * Oldest creation time guaranteed to be in memory, or null if the whole table is loaded.
+     */
+    public LocalDateTime getLoadedFrom() {
+        ensureLoaded();
+        return loadedFrom;
+    }
+    
+    /**
+     * Pull about {@code maxRows} prescriptions older than the loaded window into memory,
+     * newest first. Returns the number added; 0 means everything is loaded. As with dose
+     * records, a page runs on past {@code maxRows} until the creation time changes, so
+     * every prescription at {@code loadedFrom} is in memory.
+     */
+    public synchronized int loadOlder(int maxRows) {
+        ensureLoaded();
+        if (loadedFrom == null) {
+            return 0;
+        }
+        if (olderCursor == null) {
+            olderCursor = new KeysetCursor<>(TABLE, COLUMNS, "created_at", null, loadedFrom, true,
+                                             Math.min(maxRows, KeysetCursor.PAGE_SIZE),
+                                             InMemoryPrescriptionRepository::map);
+        }
+        int added = 0;
+        LocalDateTime oldest = loadedFrom;
+        Prescription p;
+        while ((p = olderCursor.peek()) != null
+               && (added < maxRows || p.getCreatedAt().equals(oldest))) {
+            olderCursor.poll();
+            put(p.getId(), p);
+            oldest = p.getCreatedAt();
+            added++;
+        }
+        loadedFrom = p == null || KeysetCursor.NO_TIME.equals(oldest) ? null : oldest;
+        return added;
+    }
+    
+    /**
+     * Lazily iterate prescriptions by creation time straight from the database, a page at
+     * a time, without caching them.
+     *
+     * @param from inclusive lower bound, or null
+     * @param to   exclusive upper bound, or null
+     */
+    public Stream<Prescription> streamHistory(LocalDateTime from, LocalDateTime to) {
+        return KeysetCursor.stream(new KeysetCursor<>(TABLE, COLUMNS, "created_at", from, to, false,
+                                                      KeysetCursor.PAGE_SIZE,
+                                                      InMemoryPrescriptionRepository::map));
+    }
+    
+    /**
+     * The prescription's id must be a number from
+     * {@link au.edu.rmit.cosc1295.carehome.util.Ids#nextLong}, in decimal; it is also the
+     * row's primary key.
+     */
     public void save(Prescription p) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO prescriptions (resident_id, doctor_id, medicine, dose, schedule_info, created_at) " +
-                 "VALUES (?, ?, ?, ?, ?, ?)",
-                 Statement.RETURN_GENERATED_KEYS)) {
+        withLock(p.getId(), () -> {
+            try {
+                DatabaseManager.write(
+                    "INSERT INTO prescriptions (id, resident_id, doctor_id, medicine, dose, schedule_info, created_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    Long.parseLong(p.getId()), p.getResidentId(), p.getDoctorId(), p.getMedicine(), p.getDose(), p.getSchedule(),
+                    Timestamp.valueOf(p.getCreatedAt()));
             
-            pstmt.setString(1, p.getResidentId());
-            pstmt.setString(2, p.getDoctorId());
-            pstmt.setString(3, p.getMedicine());
-            pstmt.setString(4, p.getDose());
-            pstmt.setString(5, p.getSchedule());
-            pstmt.setTimestamp(6, Timestamp.valueOf(p.getCreatedAt()));
-            pstmt.executeUpdate();
-            
-            store.put(p.getId(), p);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+                put(p.getId(), p);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
     }
 }
@@ -1,18 +1,303 @@
 package au.edu.rmit.cosc1295.carehome.repository;
+import au.edu.rmit.cosc1295.carehome.util.StripedLock;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Base class for the in-memory repositories: a primary map keyed by id plus any number of
+ * named secondary indexes.
+ *
+ * Subclasses declare indexes in their constructor with {@link #defineIndex} or
+ * {@link #defineUniqueIndex} and must add entities through {@link #put} so the indexes
+ * stay consistent. Lookups by an indexed attribute are then O(1) via {@link #findBy}.
+ *
+ * Thread safety: the store is a concurrent map and all writes for an id run under that
+ * id's stripe of a {@link StripedLock}, so repositories can be used from worker threads.
+ * Read-modify-write sequences (read an entity, change it, save it) should be wrapped in
+ * {@link #withLock}. Finder methods return immutable snapshots.
+ *
+ * Every write bumps a version number. {@link #findAll()} returns an immutable snapshot
+ * that is rebuilt only when the version has moved, so repeated calls on UI paths cost
+ * nothing.
+ *
+ * Every write is also published as a {@link RepositoryEvent} to the listeners registered
+ * with {@link #subscribe}, so views can apply the one change instead of reloading. Events
+ * are delivered on the writing thread while the entity's lock is held, which keeps them
+ * in order per id; listeners must be quick and must not write back to the repository.
+ *
+ * Loading is lazy: constructors only declare indexes, and the table is read by
+ * {@link #loadFromDatabase()} the first time the repository is used, or earlier if
+ * startup calls {@link #ensureLoaded()} from a background stage. Callers that arrive
+ * while a load is running wait for it to finish.
+ */
 public abstract class InMemoryRepository<T>
 {
-  protected final Map<String,T> store = new HashMap<>();
+  private static final int LOCK_STRIPES = 64;
+
+  protected final Map<String,T> store = new ConcurrentHashMap<>();
+  private final List<SecondaryIndex<T>> indexes = new CopyOnWriteArrayList<>();
+  private final StripedLock locks = new StripedLock(LOCK_STRIPES);
+  private final AtomicLong version = new AtomicLong();
+  private volatile Snapshot<T> snapshot;
+  private final List<Consumer<? super RepositoryEvent<T>>> listeners = new CopyOnWriteArrayList<>();
+  private final Object loadLock = new Object();
+  private volatile boolean loaded;
+  private Thread loadingThread;
+
+  private record Snapshot<T>(long version, List<T> items) {}
+
+  /**
+   * Read this repository's rows into memory with {@link #put}. Runs once, from
+   * {@link #ensureLoaded()}.
+   */
+  protected abstract void loadFromDatabase();
+
+  /**
+   * Load the table if that has not happened yet, waiting for a load already under way
+   * on another thread.
+   *
+   * @return the number of entities now in memory
+   */
+  public final int ensureLoaded()
+  {
+      if (loaded) return store.size();
+      synchronized (loadLock) {
+          // The loading thread itself may read back through the public methods
+          if (!loaded && loadingThread != Thread.currentThread()) {
+              loadingThread = Thread.currentThread();
+              try {
+                  loadFromDatabase();
+              } finally {
+                  loadingThread = null;
+                  loaded = true;
+              }
+          }
+      }
+      return store.size();
+  }
+
+  /**
+   * Fill the repository from {@code entities} (a snapshot) instead of the database. Does
+   * nothing and returns false if it has already been loaded.
+   */
+  public final boolean restore(Map<String,T> entities)
+  {
+      return restore(entities, () -> {});
+  }
+
+  /**
+   * As {@link #restore(Map)}, running {@code state} to restore subclass state before the
+   * repository counts as loaded.
+   */
+  protected final boolean restore(Map<String,T> entities, Runnable state)
+  {
+      synchronized (loadLock) {
+          if (loaded) return false;
+          entities.forEach(this::put);
+          state.run();
+          loaded = true;
+          return true;
+      }
+  }
+
+  protected final void defineIndex(String name, Function<? super T, ?> keyExtractor)
+  {
+      addIndex(new SecondaryIndex<>(name, keyExtractor, false));
+  }
+  protected final void defineUniqueIndex(String name, Function<? super T, ?> keyExtractor)
+  {
+      addIndex(new SecondaryIndex<>(name, keyExtractor, true));
+  }
+  private synchronized void addIndex(SecondaryIndex<T> index)
+  {
+      for (SecondaryIndex<T> existing : indexes)
+          if (existing.name().equals(index.name()))
+              throw new IllegalArgumentException("Index already defined: " + index.name());
+      // Unique indexes go first so a conflict is detected before anything else changes
+      if (index.isUnique()) indexes.add(0, index); else indexes.add(index);
+      store.forEach(index::update);
+  }
+
+  /**
+   * The lock guarding writes to {@code id}. Services that must update several entities
+   * together can take these locks directly.
+   */
+  public final Lock lockFor(String id)
+  {
+      ensureLoaded();
+      return locks.get(id);
+  }
+
+  /**
+   * Run {@code action} while holding the lock for {@code id}. Locks are reentrant, so the
+   * action may call save methods on this repository.
+   */
+  public final <R> R withLock(String id, Supplier<R> action)
+  {
+      ensureLoaded();
+      return locks.withLock(id, action);
+  }
+
+  public final void withLock(String id, Runnable action)
+  {
+      ensureLoaded();
+      locks.withLock(id, action);
+  }
+
+  /**
+   * Lock several ids at once, in a deadlock-free order. Close the handle to release them.
+   */
+  public final StripedLock.Held lockAll(Collection<String> ids)
+  {
+      ensureLoaded();
+      return locks.lockAll(ids.toArray());
+  }
+
+  /**
+   * Insert or replace an entity and bring every index up to date.
+   *
+   * @throws IllegalStateException if a unique index already maps the entity's key to a
+   *         different id; nothing is changed in that case
+   */
+  protected void put(String id, T entity)
+  {
+      locks.withLock(id, () -> {
+          List<Object> previousKeys = new ArrayList<>(indexes.size());
+          try {
+              for (SecondaryIndex<T> index : indexes) {
+                  previousKeys.add(index.currentKey(id));
+                  index.update(id, entity);
+              }
+          } catch (IllegalStateException e) {
+              // roll back the indexes already moved (the failed one left itself unchanged)
+              for (int i = 0; i < previousKeys.size() - 1; i++)
+                  indexes.get(i).moveTo(id, previousKeys.get(i));
+              throw e;
+          }
+          T previous = store.put(id, entity);
+          long v = version.incrementAndGet();
+          publish(new RepositoryEvent<>(previous == null ? RepositoryEvent.Kind.ADDED
+                                                         : RepositoryEvent.Kind.UPDATED, id, entity, v));
+      });
+  }
+
+  /**
+   * Register {@code listener} for every later change. Returns a handle that removes it.
+   */
+  public final Runnable subscribe(Consumer<? super RepositoryEvent<T>> listener)
+  {
+      listeners.add(listener);
+      return () -> listeners.remove(listener);
+  }
+
+  private void publish(RepositoryEvent<T> event)
+  {
+      for (Consumer<? super RepositoryEvent<T>> listener : listeners) {
+          try {
+              listener.accept(event);
+          } catch (RuntimeException e) {
+              // A broken view must not fail the write that has already happened
+              e.printStackTrace();
+          }
+      }
+  }
+
   public Optional<T> findById(String id)
   {
+      ensureLoaded();
       return Optional.ofNullable(store.get(id));
   }
+  /**
+   * Immutable snapshot of all entities. The same list instance is returned until the
+   * repository is written to again.
+   */
   public List<T> findAll()
   {
-      return new ArrayList<>(store.values());
+      ensureLoaded();
+      Snapshot<T> current = snapshot;
+      long v = version.get();
+      if (current != null && current.version() == v)
+          return current.items();
+      // Label the copy with the version read *before* copying: a write racing with the
+      // copy makes the label stale, so the next call rebuilds instead of missing it.
+      List<T> items = List.copyOf(store.values());
+      snapshot = new Snapshot<>(v, items);
+      return items;
+  }
+
+  /**
+   * Visit every id and entity, e.g. to write a snapshot. Not a consistent cut if writes
+   * run at the same time.
+   */
+  public final void forEachEntry(BiConsumer<? super String, ? super T> action)
+  {
+      ensureLoaded();
+      store.forEach(action);
+  }
+
+  /**
+   * Monotonic counter bumped by every put and delete.
+   */
+  public long version()
+  {
+      ensureLoaded();
+      return version.get();
+  }
+
+  /**
+   * All entities whose indexed attribute equals {@code key}.
+   */
+  public List<T> findBy(String indexName, Object key)
+  {
+      ensureLoaded();
+      List<T> result = new ArrayList<>();
+      for (String id : index(indexName).lookup(key)) {
+          T entity = store.get(id);
+          if (entity != null)
+              result.add(entity);
+      }
+      return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * The single entity with the given key in a (typically unique) index.
+   */
+  public Optional<T> findOneBy(String indexName, Object key)
+  {
+      ensureLoaded();
+      for (String id : index(indexName).lookup(key)) {
+          T entity = store.get(id);
+          if (entity != null)
+              return Optional.of(entity);
+      }
+      return Optional.empty();
+  }
+
+  private SecondaryIndex<T> index(String name)
+  {
+      for (SecondaryIndex<T> index : indexes)
+          if (index.name().equals(name))
+              return index;
+      throw new IllegalArgumentException("No such index: " + name);
   }
+
   public void delete(String id)
   {
-      store.remove(id);
+      ensureLoaded();
+      locks.withLock(id, () -> {
+          T removed = store.remove(id);
+          for (SecondaryIndex<T> index : indexes)
+              index.remove(id);
+          if (removed != null)
+              publish(new RepositoryEvent<>(RepositoryEvent.Kind.REMOVED, id, removed,
+                                            version.incrementAndGet()));
+      });
   }
 }
@@ -1,15 +1,16 @@
 package au.edu.rmit.cosc1295.carehome.repository;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import au.edu.rmit.cosc1295.carehome.util.SqlWrite;
+import au.edu.rmit.cosc1295.carehome.util.UnitOfWork;
 import java.sql.*;
 
 public class InMemoryResidentRepository extends InMemoryRepository<Resident> {
+    private static final String MERGE_SQL =
+        "MERGE INTO residents (id, name, gender, bed_id) KEY (id) VALUES (?, ?, ?, ?)";
     
-    public InMemoryResidentRepository() {
-        loadFromDatabase();
-    }
-    
-    private void loadFromDatabase() {
+    @Override
+    protected void loadFromDatabase() {
         try (Connection conn = DatabaseManager.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM residents")) {
@@ -24,7 +25,7 @@ public class InMemoryResidentRepository extends InMemoryRepository<Resident> {
                 if (bedId != null) {
                     resident.setBedId(bedId);
                 }
-                store.put(id, resident);
+                put(id, resident);
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -32,20 +33,36 @@ public class InMemoryResidentRepository extends InMemoryRepository<Resident> {
     }
     
     public void save(Resident r) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "MERGE INTO residents (id, name, gender, bed_id) " +
-                 "KEY (id) VALUES (?, ?, ?, ?)")) {
+        withLock(r.getId(), () -> {
+            try {
+                DatabaseManager.write(MERGE_SQL,
+                    r.getId(), r.getName(), r.getGender().toString(), r.getBedId());
             
-            pstmt.setString(1, r.getId());
-            pstmt.setString(2, r.getName());
-            pstmt.setString(3, r.getGender().toString());
-            pstmt.setString(4, r.getBedId());
-            pstmt.executeUpdate();
-            
-            store.put(r.getId(), r);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+                put(r.getId(), r);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    /**
+     * Add to {@code uow} the insert or update of {@code r} as it is; once committed the
+     * in-memory copy is replaced.
+     */
+    public void save(UnitOfWork uow, Resident r) {
+        placeIn(uow, r, r.getBedId());
+    }
+    
+    /**
+     * Add to {@code uow} the write of {@code r} with {@code bedId} as its bed. Nothing
+     * changes on {@code r} until the unit commits, so a rolled-back move leaves it where
+     * it was.
+     */
+    public void placeIn(UnitOfWork uow, Resident r, String bedId) {
+        uow.write(new SqlWrite(MERGE_SQL, r.getId(), r.getName(), r.getGender().toString(), bedId))
+           .onCommit(() -> withLock(r.getId(), () -> {
+               r.setBedId(bedId);
+               put(r.getId(), r);
+           }));
     }
 }
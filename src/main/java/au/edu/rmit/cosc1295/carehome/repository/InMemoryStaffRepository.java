@@ -4,13 +4,21 @@ import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
 import java.sql.*;
 import java.util.*;
 
+/**
+ * Staff repository with a unique username index, mirroring the UNIQUE constraint on
+ * staff.username. Login and the username-uniqueness checks are O(1) lookups.
+ */
 public class InMemoryStaffRepository extends InMemoryRepository<Staff> {
+    public static final String BY_USERNAME = "username";
+    private static final String MERGE_SQL =
+        "MERGE INTO staff (id, name, role, username, password_hash) KEY (id) VALUES (?, ?, ?, ?, ?)";
     
     public InMemoryStaffRepository() {
-        loadFromDatabase();
+        defineUniqueIndex(BY_USERNAME, Staff::getUsername);
     }
     
-    private void loadFromDatabase() {
+    @Override
+    protected void loadFromDatabase() {
         try (Connection conn = DatabaseManager.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT * FROM staff")) {
@@ -30,7 +38,7 @@ public class InMemoryStaffRepository extends InMemoryRepository<Staff> {
                 };
                 
                 if (staff != null) {
-                    store.put(id, staff);
+                    put(id, staff);
                 }
             }
         } catch (SQLException e) {
@@ -38,22 +46,56 @@ public class InMemoryStaffRepository extends InMemoryRepository<Staff> {
         }
     }
     
-    public void save(Staff s) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "MERGE INTO staff (id, name, role, username, password_hash) " +
-                 "KEY (id) VALUES (?, ?, ?, ?, ?)")) {
-            
-            pstmt.setString(1, s.getId());
-            pstmt.setString(2, s.getName());
-            pstmt.setString(3, s.getRole().toString());
-            pstmt.setString(4, s.getUsername());
-            pstmt.setString(5, s.getPasswordHash());
-            pstmt.executeUpdate();
+    public Optional<Staff> findByUsername(String username) {
+        return findOneBy(BY_USERNAME, username);
+    }
+    
+    /**
+     * Whether {@code username} belongs to someone other than {@code staffId}
+     * (pass null to check against all staff).
+     */
+    public boolean isUsernameTaken(String username, String staffId) {
+        return findByUsername(username)
+            .map(holder -> !holder.getId().equals(staffId))
+            .orElse(false);
+    }
+    
+    /**
+     * @throws IllegalStateException if the username is already used by another staff member
+     */
+    public synchronized void save(Staff s) {
+        if (isUsernameTaken(s.getUsername(), s.getId())) {
+            throw new IllegalStateException("Username already exists: " + s.getUsername());
+        }
+        try {
+            DatabaseManager.write(MERGE_SQL,
+                s.getId(), s.getName(), s.getRole().toString(), s.getUsername(), s.getPasswordHash());
             
-            store.put(s.getId(), s);
+            put(s.getId(), s);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
+    
+    /**
+     * Change a staff member's login. The uniqueness check, the database write and the
+     * in-memory/index update happen under one lock, and the entity is only modified once
+     * the write has succeeded.
+     *
+     * @throws IllegalStateException if the username is taken or the write fails
+     */
+    public synchronized void updateCredentials(Staff s, String username, String password) {
+        if (isUsernameTaken(username, s.getId())) {
+            throw new IllegalStateException("Username already taken by another staff member");
+        }
+        try {
+            DatabaseManager.write(MERGE_SQL,
+                s.getId(), s.getName(), s.getRole().toString(), username, password);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not update credentials: " + e.getMessage(), e);
+        }
+        s.setUsername(username);
+        s.setPassword(password);
+        put(s.getId(), s);
+    }
 }
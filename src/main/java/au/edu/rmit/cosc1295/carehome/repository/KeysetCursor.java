@@ -0,0 +1,196 @@
+package au.edu.rmit.cosc1295.carehome.repository;
+
+import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cursor over a time-ordered table using keyset pagination on (time column, id).
+ *
+ * Each page is a short, independent query of the form
+ * {@code WHERE (ts, id) > (lastTs, lastId) ORDER BY ts, id FETCH FIRST n ROWS ONLY},
+ * so no connection or result set is held open between pages and deep pages cost the
+ * same as the first one. Rows are only materialised a page at a time.
+ *
+ * Rows whose time is NULL count as older than every dated row: they come first in
+ * ascending order and last in descending order, are paged by id alone, and are included
+ * only when there is no lower bound. Mappers turn the NULL into {@link #NO_TIME}.
+ *
+ * History repositories share two settings:
+ * - carehome.history.pageSize: rows per page (default 500)
+ * - carehome.history.eagerDays: how many days of history to load at startup; older rows
+ *   are fetched on demand. Negative (the default) loads everything eagerly.
+ */
+final class KeysetCursor<T> extends Spliterators.AbstractSpliterator<T> {
+    static final int PAGE_SIZE = Integer.getInteger("carehome.history.pageSize", 500);
+    private static final int EAGER_DAYS = Integer.getInteger("carehome.history.eagerDays", -1);
+    /** Stands in for a NULL time column in memory; older than any real row. */
+    static final LocalDateTime NO_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private final String firstPageSql;
+    private final String nextPageSql;
+    private final String firstNullPageSql;
+    private final String nextNullPageSql;
+    private final String timeColumn;
+    private final boolean descending;
+    private final Timestamp from;
+    private final Timestamp to;
+    private final int pageSize;
+    private final RowMapper<T> mapper;
+    private final ArrayDeque<T> page;
+
+    private boolean nullPhase;
+    private boolean nullsPending;
+    private boolean started;
+    private Timestamp lastTime;
+    private long lastId;
+    private boolean exhausted;
+
+    /**
+     * @param columns    projected columns; must include {@code timeColumn} and {@code id}
+     * @param from       inclusive lower bound, or null for unbounded
+     * @param to         exclusive upper bound, or null for unbounded
+     * @param descending newest first when true
+     */
+    KeysetCursor(String table, String columns, String timeColumn,
+                 LocalDateTime from, LocalDateTime to, boolean descending,
+                 int pageSize, RowMapper<T> mapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.from = from != null ? Timestamp.valueOf(from) : null;
+        this.to = to != null ? Timestamp.valueOf(to) : null;
+        this.pageSize = pageSize;
+        this.mapper = mapper;
+        this.page = new ArrayDeque<>(pageSize);
+        this.timeColumn = timeColumn;
+        this.descending = descending;
+        // Ascending starts with the undated rows, descending ends with them
+        this.nullsPending = from == null;
+        this.nullPhase = nullsPending && !descending;
+
+        String where = " WHERE " + timeColumn + " IS NOT NULL"
+            + (from != null ? " AND " + timeColumn + " >= ?" : "")
+            + (to != null ? " AND " + timeColumn + " < ?" : "");
+        String order = " ORDER BY " + timeColumn + (descending ? " DESC, id DESC" : ", id")
+            + " FETCH FIRST ? ROWS ONLY";
+        String select = "SELECT " + columns + " FROM " + table + where;
+        this.firstPageSql = select + order;
+        this.nextPageSql = select + " AND (" + timeColumn + ", id) " + (descending ? "<" : ">") + " (?, ?)" + order;
+
+        String nullSelect = "SELECT " + columns + " FROM " + table + " WHERE " + timeColumn + " IS NULL";
+        String nullOrder = " ORDER BY id" + (descending ? " DESC" : "") + " FETCH FIRST ? ROWS ONLY";
+        this.firstNullPageSql = nullSelect + nullOrder;
+        this.nextNullPageSql = nullSelect + " AND id " + (descending ? "<" : ">") + " ?" + nullOrder;
+    }
+
+    /**
+     * The time in {@code column}, or {@link #NO_TIME} if it is NULL.
+     */
+    static LocalDateTime time(ResultSet rs, String column) throws SQLException {
+        Timestamp ts = rs.getTimestamp(column);
+        return ts != null ? ts.toLocalDateTime() : NO_TIME;
+    }
+
+    /**
+     * Start of the eagerly loaded history window, or null when everything is loaded.
+     */
+    static LocalDateTime eagerWindowStart() {
+        return EAGER_DAYS < 0 ? null : LocalDateTime.now().minusDays(EAGER_DAYS);
+    }
+
+    static <T> Stream<T> stream(KeysetCursor<T> cursor) {
+        return StreamSupport.stream(cursor, false);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        T next = poll();
+        if (next == null) {
+            return false;
+        }
+        action.accept(next);
+        return true;
+    }
+
+    /**
+     * The next row without consuming it, or null when there are no more.
+     */
+    T peek() {
+        while (page.isEmpty() && !exhausted) {
+            fetchPage();
+        }
+        return page.peek();
+    }
+
+    /**
+     * Consume the next row, or return null when there are no more.
+     */
+    T poll() {
+        T next = peek();
+        page.poll();
+        return next;
+    }
+
+    private void fetchPage() {
+        String sql = nullPhase ? (started ? nextNullPageSql : firstNullPageSql)
+                               : (started ? nextPageSql : firstPageSql);
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (!nullPhase && from != null) {
+                ps.setTimestamp(i++, from);
+            }
+            if (!nullPhase && to != null) {
+                ps.setTimestamp(i++, to);
+            }
+            if (started) {
+                if (!nullPhase) {
+                    ps.setTimestamp(i++, lastTime);
+                }
+                ps.setLong(i++, lastId);
+            }
+            ps.setInt(i, pageSize);
+            ps.setFetchSize(pageSize);
+
+            int rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    page.add(mapper.map(rs));
+                    lastTime = rs.getTimestamp(timeColumn);
+                    lastId = rs.getLong("id");
+                    started = true;
+                    rows++;
+                }
+            }
+            if (rows < pageSize) {
+                nextPhase();
+            }
+        } catch (SQLException e) {
+            exhausted = true;
+            throw new IllegalStateException("Failed to read page from history", e);
+        }
+    }
+
+    private void nextPhase() {
+        if (nullPhase) {
+            nullPhase = false;
+            nullsPending = false;
+            exhausted = descending;
+        } else if (nullsPending && descending) {
+            nullPhase = true;
+        } else {
+            exhausted = true;
+        }
+        started = false;
+    }
+}
@@ -0,0 +1,57 @@
+package au.edu.rmit.cosc1295.carehome.repository;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A change to one entity of an {@link InMemoryRepository} (or the dose history),
+ * published to its subscribers.
+ *
+ * For ADDED and UPDATED {@code entity} is the stored entity; for REMOVED it is the one
+ * that was removed. {@code version} is the repository version after the change.
+ */
+public record RepositoryEvent<T>(Kind kind, String key, T entity, long version) {
+
+    public enum Kind { ADDED, UPDATED, REMOVED }
+
+    /**
+     * Combine two events for the same key into the one a late observer needs to see, or
+     * null if they cancel out (added, then removed before anyone looked).
+     */
+    public static <T> RepositoryEvent<T> merge(RepositoryEvent<T> older, RepositoryEvent<T> newer) {
+        return switch (older.kind()) {
+            case ADDED -> switch (newer.kind()) {
+                case REMOVED -> null;
+                default -> new RepositoryEvent<>(Kind.ADDED, newer.key(), newer.entity(), newer.version());
+            };
+            case REMOVED -> switch (newer.kind()) {
+                case ADDED -> new RepositoryEvent<>(Kind.UPDATED, newer.key(), newer.entity(), newer.version());
+                default -> newer;
+            };
+            case UPDATED -> newer;
+        };
+    }
+
+    /**
+     * Apply this change to a list holding entities of the same repository, matching rows by
+     * {@code keyOf}. An update replaces the row in place so its position is kept.
+     */
+    public void applyTo(List<T> list, Function<? super T, String> keyOf) {
+        int index = -1;
+        for (int i = 0; i < list.size(); i++) {
+            if (key.equals(keyOf.apply(list.get(i)))) {
+                index = i;
+                break;
+            }
+        }
+        if (kind == Kind.REMOVED) {
+            if (index >= 0) {
+                list.remove(index);
+            }
+        } else if (index >= 0) {
+            list.set(index, entity);
+        } else {
+            list.add(entity);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package au.edu.rmit.cosc1295.carehome.repository;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A named secondary index over an {@link InMemoryRepository}.
+ *
+ * Keys are derived from entities with an extractor function; entities whose key is null
+ * are simply not indexed. Because the model objects are mutable (a bed's resident, a
+ * staff member's username), the index remembers the key each id was filed under so a
+ * re-saved entity is moved rather than duplicated.
+ *
+ * Thread safety: the repository serialises updates for the same id (striped lock), and
+ * every per-key change here is a single atomic {@code compute} on a concurrent map, so
+ * updates for different ids can run in parallel. For unique indexes the conflict check
+ * happens inside that same {@code compute}, so two ids can never claim one key.
+ */
+final class SecondaryIndex<T> {
+    private final String name;
+    private final Function<? super T, ?> extractor;
+    private final boolean unique;
+    private final Map<Object, Set<String>> idsByKey = new ConcurrentHashMap<>();
+    private final Map<String, Object> keyById = new ConcurrentHashMap<>();
+
+    SecondaryIndex(String name, Function<? super T, ?> extractor, boolean unique) {
+        this.name = name;
+        this.extractor = extractor;
+        this.unique = unique;
+    }
+
+    String name() {
+        return name;
+    }
+
+    boolean isUnique() {
+        return unique;
+    }
+
+    Object keyOf(T entity) {
+        return extractor.apply(entity);
+    }
+
+    /**
+     * Key {@code id} is currently filed under, or null.
+     */
+    Object currentKey(String id) {
+        return keyById.get(id);
+    }
+
+    /**
+     * File {@code id} under the entity's current key.
+     *
+     * @throws IllegalStateException for a unique index whose key belongs to another id;
+     *         the index is left unchanged
+     */
+    void update(String id, T entity) {
+        moveTo(id, keyOf(entity));
+    }
+
+    /**
+     * File {@code id} under {@code key} (null removes it), releasing its previous key.
+     */
+    void moveTo(String id, Object key) {
+        Object previous = keyById.get(id);
+        if (Objects.equals(previous, key)) {
+            return;
+        }
+        if (key != null) {
+            idsByKey.compute(key, (k, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                } else if (unique && !ids.isEmpty() && !ids.contains(id)) {
+                    throw new IllegalStateException("Duplicate " + name + ": " + k);
+                }
+                ids.add(id);
+                return ids;
+            });
+            keyById.put(id, key);
+        } else {
+            keyById.remove(id);
+        }
+        if (previous != null) {
+            release(previous, id);
+        }
+    }
+
+    void remove(String id) {
+        Object previous = keyById.remove(id);
+        if (previous != null) {
+            release(previous, id);
+        }
+    }
+
+    private void release(Object key, String id) {
+        idsByKey.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    Set<String> lookup(Object key) {
+        Set<String> ids = idsByKey.get(key);
+        return ids != null ? ids : Set.of();
+    }
+}
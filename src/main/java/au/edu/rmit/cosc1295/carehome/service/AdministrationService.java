@@ -2,6 +2,7 @@ package au.edu.rmit.cosc1295.carehome.service;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.exceptions.*;
 import au.edu.rmit.cosc1295.carehome.repository.*;
+import au.edu.rmit.cosc1295.carehome.util.Ids;
 public class AdministrationService {
   private final AuditService audit;
   private final InMemoryAdministrationRepository repo;
@@ -17,7 +18,7 @@ public class AdministrationService {
           throws AuthorizationException {
     if(actor.getRole()!=Role.NURSE && actor.getRole()!=Role.MANAGER) throw new AuthorizationException();
     AdministrationRecord rec = new AdministrationRecord(residentId, nurseId, med, dose, prescriptionTime);
-    repo.save("AR-"+System.nanoTime(), rec);
+    repo.save(String.valueOf(Ids.nextLong()), rec);
     audit.log(nurseId,"ADMINISTER_DOSE","resident="+residentId+", med="+med+", dose="+dose+", prescriptionTime="+prescriptionTime);
     return rec;
   }
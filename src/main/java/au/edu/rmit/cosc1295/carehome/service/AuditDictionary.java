@@ -0,0 +1,124 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * String dictionaries for the binary audit index: staff ids, action types and resident
+ * ids are stored in records as small integer codes.
+ *
+ * Codes are assigned in first-seen order per kind and appended to dictionary.tsv as
+ * "kind, code, value" lines. New entries are written before any record that uses them,
+ * so after a crash every code found in a segment can be resolved.
+ */
+final class AuditDictionary {
+    enum Kind { STAFF, ACTION, RESIDENT }
+
+    private final Path file;
+    private final List<Map<String, Integer>> codes = new ArrayList<>();
+    private final List<List<String>> values = new ArrayList<>();
+    private final StringBuilder pending = new StringBuilder();
+    private FileChannel channel;
+
+    AuditDictionary(Path file) throws IOException {
+        this.file = file;
+        for (int i = 0; i < Kind.values().length; i++) {
+            codes.add(new HashMap<>());
+            values.add(new ArrayList<>());
+        }
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] f = line.split("\t", 3);
+                if (f.length < 3) {
+                    continue; // torn last line
+                }
+                int kind = Kind.valueOf(f[0]).ordinal();
+                int code = Integer.parseInt(f[1]);
+                if (code == values.get(kind).size()) {
+                    values.get(kind).add(f[2]);
+                    codes.get(kind).put(f[2], code);
+                }
+            }
+        }
+    }
+
+    /**
+     * Code for the value, assigning a new one if needed. Writer thread only.
+     */
+    synchronized int encode(Kind kind, String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(kind.ordinal()).get(value);
+        if (code != null) {
+            return code;
+        }
+        String clean = value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        int assigned = values.get(kind.ordinal()).size();
+        values.get(kind.ordinal()).add(value);
+        codes.get(kind.ordinal()).put(value, assigned);
+        pending.append(kind).append('\t').append(assigned).append('\t').append(clean).append('\n');
+        return assigned;
+    }
+
+    /**
+     * Existing code for the value, or -1 if it has never been logged.
+     */
+    synchronized int lookup(Kind kind, String value) {
+        Integer code = codes.get(kind.ordinal()).get(value);
+        return code != null ? code : -1;
+    }
+
+    synchronized String decode(Kind kind, int code) {
+        return code < 0 ? null : values.get(kind.ordinal()).get(code);
+    }
+
+    /**
+     * Append codes assigned since the last call. Writer thread only.
+     */
+    void writePending() throws IOException {
+        String text;
+        synchronized (this) {
+            if (pending.length() == 0) {
+                return;
+            }
+            text = pending.toString();
+            pending.setLength(0);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        FileChannel ch = channel();
+        while (bytes.hasRemaining()) {
+            ch.write(bytes);
+        }
+    }
+
+    void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,41 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * One audited action. The timestamp is taken when the action is logged, not when the
+ * entry reaches disk.
+ */
+public record AuditEntry(LocalDateTime time, String staffId, String action, String details) {
+
+    /**
+     * The entry as a line of actions.log, including the trailing newline.
+     */
+    public String toLine() {
+        return "[" + time + "] staff=" + staffId + " action=" + action + " details=" + details
+            + System.lineSeparator();
+    }
+
+    /**
+     * Parse a line written by {@link #toLine()}, or return null if it is not one.
+     */
+    public static AuditEntry parse(String line) {
+        if (line == null || !line.startsWith("[")) {
+            return null;
+        }
+        int close = line.indexOf("] staff=");
+        int action = line.indexOf(" action=", close + 1);
+        int details = line.indexOf(" details=", action + 1);
+        if (close < 0 || action < 0 || details < 0) {
+            return null;
+        }
+        try {
+            return new AuditEntry(LocalDateTime.parse(line.substring(1, close)),
+                                  line.substring(close + "] staff=".length(), action),
+                                  line.substring(action + " action=".length(), details),
+                                  line.substring(details + " details=".length()));
+        } catch (java.time.format.DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import au.edu.rmit.cosc1295.carehome.service.AuditDictionary.Kind;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Binary, indexed copy of the audit log for structured queries.
+ *
+ * Design: the audit writer appends every entry here as well as to actions.log. Records
+ * are compact and dictionary-encoded:
+ * {@code int length, long timeMicros, int staff, int action, int resident, details...}
+ * where the three ints are {@link AuditDictionary} codes (resident is parsed from
+ * "resident=..." in the details, -1 if absent). Segments (audit/index/seg-N.bin) roll
+ * together with the text log; each one has an {@link AuditIndexSegment} with a sparse
+ * time index and posting lists, saved next to it when the segment is sealed.
+ *
+ * Records are only indexed after their bytes reach the file, so a query never sees an
+ * entry it cannot read back. Queries read records through their own short-lived channel:
+ * an interrupted query thread must not close the writer's channel.
+ */
+final class AuditIndex {
+    private static final long MAGIC = 0x4341554449543031L; // "CAUDIT01"
+    private static final int HEADER = 8;
+    private static final int FIXED = 8 + 4 + 4 + 4;
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final Path dir;
+    private final AuditDictionary dictionary;
+    private final List<AuditIndexSegment> segments = new CopyOnWriteArrayList<>();
+
+    // Writer thread state
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(256 * 1024);
+    private final List<long[]> pending = new ArrayList<>();
+    private AuditIndexSegment active;
+    private FileChannel channel;
+    private long position;
+    private int nextSeq;
+
+    AuditIndex(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        this.dictionary = new AuditDictionary(dir.resolve("dictionary.tsv"));
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.filter(p -> p.getFileName().toString().matches("seg-\\d+\\.bin")).forEach(files::add);
+        }
+        files.sort((a, b) -> Integer.compare(seqOf(a), seqOf(b)));
+        for (Path data : files) {
+            nextSeq = Math.max(nextSeq, seqOf(data) + 1);
+            AuditIndexSegment loaded = AuditIndexSegment.load(data);
+            try {
+                segments.add(loaded != null ? loaded : scan(data));
+            } catch (IOException e) {
+                // Unreadable header: set it aside rather than refuse to start
+                e.printStackTrace();
+                Files.move(data, data.resolveSibling(data.getFileName() + ".corrupt"),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (!segments.isEmpty() && !Files.exists(AuditIndexSegment.indexFileOf(last().data))) {
+            // Reopen the unsealed segment left by the previous run
+            active = last();
+            channel = FileChannel.open(active.data, StandardOpenOption.WRITE);
+            position = active.dataLength();
+            channel.truncate(position); // drop a torn tail
+        } else {
+            openSegment();
+        }
+    }
+
+    boolean isEmpty() {
+        for (AuditIndexSegment s : segments) {
+            if (s.count() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- writer thread ----
+
+    void append(AuditEntry entry) throws IOException {
+        byte[] details = entry.details() == null ? new byte[0]
+            : entry.details().getBytes(StandardCharsets.UTF_8);
+        int staff = dictionary.encode(Kind.STAFF, entry.staffId());
+        int action = dictionary.encode(Kind.ACTION, entry.action());
+        int resident = dictionary.encode(Kind.RESIDENT, residentOf(entry.details()));
+        long time = toMicros(entry.time());
+        int size = 4 + FIXED + details.length;
+        if (size > buf.remaining()) {
+            writeOut();
+        }
+        if (position + (buf.position() + size) > MAX_SEGMENT_BYTES) {
+            roll();
+        }
+        long offset = position + buf.position();
+        ByteBuffer target = size > buf.capacity() ? ByteBuffer.allocate(size) : buf;
+        target.putInt(FIXED + details.length).putLong(time)
+              .putInt(staff).putInt(action).putInt(resident).put(details);
+        pending.add(new long[] { time, staff, action, resident, offset, offset + size });
+        if (target != buf) {
+            target.flip();
+            write(target);
+            indexPending();
+        }
+    }
+
+    /**
+     * Write buffered records (dictionary first) and index them.
+     */
+    void writeOut() throws IOException {
+        dictionary.writePending();
+        buf.flip();
+        write(buf);
+        buf.clear();
+        indexPending();
+    }
+
+    void sync() throws IOException {
+        dictionary.force();
+        channel.force(false);
+    }
+
+    /**
+     * Seal the active segment (saving its index) and start a new one.
+     */
+    void roll() throws IOException {
+        writeOut();
+        sync();
+        channel.close();
+        active.save();
+        openSegment();
+    }
+
+    /**
+     * Delete sealed segments whose newest entry is older than the cutoff.
+     */
+    void expire(LocalDateTime cutoff) {
+        long limit = toMicros(cutoff);
+        for (AuditIndexSegment s : segments) {
+            if (s != active && s.maxTime() < limit) {
+                segments.remove(s);
+                try {
+                    Files.deleteIfExists(s.data);
+                    Files.deleteIfExists(AuditIndexSegment.indexFileOf(s.data));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    void close() throws IOException {
+        writeOut();
+        sync();
+        channel.close();
+        dictionary.close();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    private void indexPending() {
+        for (long[] r : pending) {
+            active.add(r[0], (int) r[1], (int) r[2], (int) r[3], (int) r[4], r[5]);
+        }
+        pending.clear();
+    }
+
+    private void openSegment() throws IOException {
+        Path data = dir.resolve("seg-" + nextSeq++ + ".bin");
+        channel = FileChannel.open(data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER).putLong(MAGIC);
+        header.flip();
+        position = 0;
+        write(header);
+        active = new AuditIndexSegment(data, HEADER);
+        segments.add(active);
+    }
+
+    // ---- queries (any thread) ----
+
+    List<AuditEntry> query(AuditQuery q) {
+        long from = q.from() == null ? Long.MIN_VALUE : toMicros(q.from());
+        long to = q.to() == null ? Long.MAX_VALUE : toMicros(q.to());
+        int staff = codeOf(Kind.STAFF, q.staffId());
+        int action = codeOf(Kind.ACTION, q.action());
+        int resident = codeOf(Kind.RESIDENT, q.residentId());
+
+        List<AuditIndexSegment> ordered = new ArrayList<>(segments);
+        if (q.descending()) {
+            Collections.reverse(ordered);
+        }
+        List<AuditEntry> result = new ArrayList<>();
+        for (AuditIndexSegment s : ordered) {
+            int remaining = q.limit() - result.size();
+            if (remaining <= 0) {
+                break;
+            }
+            int[] offsets = s.match(from, to, staff, action, resident, remaining, q.descending());
+            if (offsets.length > 0) {
+                read(s.data, offsets, result);
+            }
+        }
+        return result;
+    }
+
+    private int codeOf(Kind kind, String value) {
+        if (value == null) {
+            return -1;
+        }
+        int code = dictionary.lookup(kind, value);
+        return code < 0 ? -2 : code;
+    }
+
+    private void read(Path data, int[] offsets, List<AuditEntry> out) {
+        try (FileChannel ch = FileChannel.open(data, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4 + FIXED);
+            for (int offset : offsets) {
+                head.clear();
+                readFully(ch, head, offset);
+                head.flip();
+                int length = head.getInt();
+                long time = head.getLong();
+                int staff = head.getInt();
+                int action = head.getInt();
+                head.getInt();
+                ByteBuffer details = ByteBuffer.allocate(length - FIXED);
+                readFully(ch, details, offset + 4 + FIXED);
+                out.add(new AuditEntry(fromMicros(time),
+                                       dictionary.decode(Kind.STAFF, staff),
+                                       dictionary.decode(Kind.ACTION, action),
+                                       new String(details.array(), StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read audit segment " + data, e);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, position + dst.position());
+            if (n < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    // ---- recovery ----
+
+    /**
+     * Rebuild a segment's index by reading its records, stopping at a torn tail.
+     */
+    private static AuditIndexSegment scan(Path data) throws IOException {
+        AuditIndexSegment s = new AuditIndexSegment(data, HEADER);
+        if (Files.size(data) < HEADER) {
+            throw new IOException("Audit segment has no header: " + data);
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(data), 64 * 1024))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("Not an audit segment: " + data);
+            }
+            long offset = HEADER;
+            long size = Files.size(data);
+            while (offset + 4 + FIXED <= size) {
+                int length = in.readInt();
+                if (length < FIXED || offset + 4 + length > size) {
+                    break;
+                }
+                long time = in.readLong();
+                int staff = in.readInt();
+                int action = in.readInt();
+                int resident = in.readInt();
+                in.skipNBytes(length - FIXED);
+                s.add(time, staff, action, resident, (int) offset, offset + 4 + length);
+                offset += 4 + length;
+            }
+        } catch (EOFException e) {
+            // Header or record cut short: keep what was read
+        }
+        return s;
+    }
+
+    // ---- encoding helpers ----
+
+    static String residentOf(String details) {
+        if (details == null) {
+            return null;
+        }
+        int i = details.indexOf("resident=");
+        if (i < 0) {
+            return null;
+        }
+        int start = i + "resident=".length();
+        int end = start;
+        while (end < details.length() && details.charAt(end) != ',' && details.charAt(end) != ' ') {
+            end++;
+        }
+        return end > start ? details.substring(start, end) : null;
+    }
+
+    static long toMicros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + t.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+            (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static int seqOf(Path data) {
+        String name = data.getFileName().toString();
+        return Integer.parseInt(name.substring(4, name.length() - 4));
+    }
+
+    private AuditIndexSegment last() {
+        return segments.get(segments.size() - 1);
+    }
+}
@@ -0,0 +1,288 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index over one binary audit segment.
+ *
+ * Design: records are numbered in append order (their ordinal). For each record the
+ * index keeps its timestamp and file offset; a sparse time index keeps the min and max
+ * timestamp of every block of {@link #BLOCK} records, so a range query skips whole blocks
+ * (timestamps are only roughly ordered, because producers stamp entries before they
+ * queue them). Posting lists map each staff, action and resident code to the ordered
+ * ordinals of the records carrying it; a filtered query walks the shortest list and
+ * checks the others by binary search.
+ *
+ * When the segment is sealed the index is saved next to it (.idx) so the next start can
+ * load it instead of rescanning the data. The active segment is appended to by the audit
+ * writer while queries run, so all access is synchronized.
+ */
+final class AuditIndexSegment {
+    static final int BLOCK = 256;
+    private static final long IDX_MAGIC = 0x4341494458303031L; // "CAIDX001"
+
+    final Path data;
+    private int count;
+    private long dataLength;
+    private long[] times = new long[1024];
+    private int[] offsets = new int[1024];
+    private long[] blockMin = new long[4];
+    private long[] blockMax = new long[4];
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    // One map per AuditDictionary.Kind, by ordinal
+    private final List<Map<Integer, Postings>> postings = new ArrayList<>();
+
+    /**
+     * @param dataLength length of the segment file before its first record (the header)
+     */
+    AuditIndexSegment(Path data, long dataLength) {
+        this.data = data;
+        this.dataLength = dataLength;
+        for (int i = 0; i < AuditDictionary.Kind.values().length; i++) {
+            postings.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Index a record that has been written at {@code offset}; {@code end} is the file
+     * length after it.
+     */
+    synchronized void add(long time, int staff, int action, int resident, int offset, long end) {
+        if (count == times.length) {
+            times = Arrays.copyOf(times, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        int ordinal = count;
+        times[ordinal] = time;
+        offsets[ordinal] = offset;
+        int block = ordinal / BLOCK;
+        if (block == blockMin.length) {
+            blockMin = Arrays.copyOf(blockMin, block * 2);
+            blockMax = Arrays.copyOf(blockMax, block * 2);
+        }
+        if (ordinal % BLOCK == 0) {
+            blockMin[block] = time;
+            blockMax[block] = time;
+        } else {
+            blockMin[block] = Math.min(blockMin[block], time);
+            blockMax[block] = Math.max(blockMax[block], time);
+        }
+        post(AuditDictionary.Kind.STAFF, staff, ordinal);
+        post(AuditDictionary.Kind.ACTION, action, ordinal);
+        post(AuditDictionary.Kind.RESIDENT, resident, ordinal);
+        minTime = Math.min(minTime, time);
+        maxTime = Math.max(maxTime, time);
+        dataLength = end;
+        count++;
+    }
+
+    private void post(AuditDictionary.Kind kind, int code, int ordinal) {
+        if (code >= 0) {
+            postings.get(kind.ordinal()).computeIfAbsent(code, k -> new Postings()).add(ordinal);
+        }
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    synchronized long dataLength() {
+        return dataLength;
+    }
+
+    synchronized long maxTime() {
+        return maxTime;
+    }
+
+    /**
+     * File offsets of matching records in ordinal order (reversed when descending), at
+     * most {@code limit} of them. A code of -1 means "any"; -2 means a value that was
+     * never logged, which matches nothing.
+     */
+    synchronized int[] match(long from, long to, int staff, int action, int resident,
+                             int limit, boolean descending) {
+        if (count == 0 || limit <= 0 || maxTime < from || minTime >= to
+                || staff == -2 || action == -2 || resident == -2) {
+            return new int[0];
+        }
+        Postings[] filters = new Postings[3];
+        int n = 0;
+        int[] codes = { staff, action, resident };
+        for (int k = 0; k < codes.length; k++) {
+            if (codes[k] >= 0) {
+                Postings p = postings.get(k).get(codes[k]);
+                if (p == null) {
+                    return new int[0];
+                }
+                filters[n++] = p;
+            }
+        }
+        int[] result = new int[Math.min(limit, 64)];
+        int found = 0;
+        if (n == 0) {
+            // Time range only: scan the blocks whose range overlaps
+            int blocks = (count + BLOCK - 1) / BLOCK;
+            for (int bi = 0; bi < blocks && found < limit; bi++) {
+                int b = descending ? blocks - 1 - bi : bi;
+                if (blockMax[b] < from || blockMin[b] >= to) {
+                    continue;
+                }
+                int start = b * BLOCK;
+                int end = Math.min(count, start + BLOCK);
+                for (int j = 0; j < end - start && found < limit; j++) {
+                    int ordinal = descending ? end - 1 - j : start + j;
+                    if (times[ordinal] >= from && times[ordinal] < to) {
+                        result = append(result, found++, offsets[ordinal]);
+                    }
+                }
+            }
+        } else {
+            // Walk the shortest posting list, probe the others
+            Arrays.sort(filters, 0, n, (a, b) -> Integer.compare(a.size, b.size));
+            Postings driver = filters[0];
+            for (int i = 0; i < driver.size && found < limit; i++) {
+                int ordinal = driver.ordinals[descending ? driver.size - 1 - i : i];
+                int b = ordinal / BLOCK;
+                if (blockMax[b] < from || blockMin[b] >= to
+                        || times[ordinal] < from || times[ordinal] >= to) {
+                    continue;
+                }
+                boolean all = true;
+                for (int f = 1; f < n && all; f++) {
+                    all = filters[f].contains(ordinal);
+                }
+                if (all) {
+                    result = append(result, found++, offsets[ordinal]);
+                }
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    // ---- sidecar index ----
+
+    static Path indexFileOf(Path data) {
+        return data.resolveSibling(data.getFileName() + ".idx");
+    }
+
+    synchronized void save() throws IOException {
+        Path tmp = indexFileOf(data).resolveSibling(indexFileOf(data).getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+            out.writeLong(IDX_MAGIC);
+            out.writeLong(dataLength);
+            out.writeInt(count);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(times[i]);
+                out.writeInt(offsets[i]);
+            }
+            int blocks = (count + BLOCK - 1) / BLOCK;
+            for (int b = 0; b < blocks; b++) {
+                out.writeLong(blockMin[b]);
+                out.writeLong(blockMax[b]);
+            }
+            for (Map<Integer, Postings> kind : postings) {
+                out.writeInt(kind.size());
+                for (Map.Entry<Integer, Postings> e : kind.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeInt(e.getValue().size);
+                    for (int i = 0; i < e.getValue().size; i++) {
+                        out.writeInt(e.getValue().ordinals[i]);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, indexFileOf(data), java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                   java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a sealed segment's saved index, or return null if it is missing or does not
+     * match the data file.
+     */
+    static AuditIndexSegment load(Path data) {
+        Path idx = indexFileOf(data);
+        if (!Files.exists(idx)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(idx), 64 * 1024))) {
+            if (in.readLong() != IDX_MAGIC) {
+                return null;
+            }
+            AuditIndexSegment s = new AuditIndexSegment(data, in.readLong());
+            if (s.dataLength != Files.size(data)) {
+                return null;
+            }
+            s.count = in.readInt();
+            s.minTime = in.readLong();
+            s.maxTime = in.readLong();
+            s.times = new long[Math.max(s.count, 1)];
+            s.offsets = new int[Math.max(s.count, 1)];
+            for (int i = 0; i < s.count; i++) {
+                s.times[i] = in.readLong();
+                s.offsets[i] = in.readInt();
+            }
+            int blocks = (s.count + BLOCK - 1) / BLOCK;
+            s.blockMin = new long[Math.max(blocks, 1)];
+            s.blockMax = new long[Math.max(blocks, 1)];
+            for (int b = 0; b < blocks; b++) {
+                s.blockMin[b] = in.readLong();
+                s.blockMax[b] = in.readLong();
+            }
+            for (Map<Integer, Postings> kind : s.postings) {
+                int keys = in.readInt();
+                for (int k = 0; k < keys; k++) {
+                    int code = in.readInt();
+                    Postings p = new Postings();
+                    p.size = in.readInt();
+                    p.ordinals = new int[Math.max(p.size, 1)];
+                    for (int i = 0; i < p.size; i++) {
+                        p.ordinals[i] = in.readInt();
+                    }
+                    kind.put(code, p);
+                }
+            }
+            return s;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ordered, growable list of record ordinals.
+     */
+    private static final class Postings {
+        int[] ordinals = new int[4];
+        int size;
+
+        void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        boolean contains(int ordinal) {
+            return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filter for {@link AuditService#query}. Null fields match anything; the time range is
+ * [from, to). Start from {@link #all()} and narrow it down:
+ *
+ * <pre>
+ * AuditQuery.all().byAction("ADMINISTER_DOSE").byResident("R-1")
+ *     .during(weekStart, weekEnd).newestFirst().limit(100)
+ * </pre>
+ */
+public record AuditQuery(LocalDateTime from, LocalDateTime to, String staffId, String action,
+                         String residentId, int limit, boolean descending) {
+
+    public static AuditQuery all() {
+        return new AuditQuery(null, null, null, null, null, Integer.MAX_VALUE, false);
+    }
+
+    public AuditQuery during(LocalDateTime from, LocalDateTime to) {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, descending);
+    }
+
+    public AuditQuery byStaff(String staffId) {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, descending);
+    }
+
+    public AuditQuery byAction(String action) {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, descending);
+    }
+
+    /**
+     * Entries whose details name the resident ("resident=..."), as logged by the resident,
+     * prescription and administration services.
+     */
+    public AuditQuery byResident(String residentId) {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, descending);
+    }
+
+    public AuditQuery limit(int limit) {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, descending);
+    }
+
+    /**
+     * Return the most recent matches first (and apply the limit from that end).
+     */
+    public AuditQuery newestFirst() {
+        return new AuditQuery(from, to, staffId, action, residentId, limit, true);
+    }
+}
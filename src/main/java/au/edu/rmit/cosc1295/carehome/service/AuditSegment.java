@@ -0,0 +1,58 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A file of the audit log covering entries logged between {@code first} and {@code last}.
+ * Closed segments are gzip-compressed in the background, so {@code path} may end in
+ * {@code .gz}; the active segment is always actions.log itself.
+ */
+public record AuditSegment(Path path, LocalDateTime first, LocalDateTime last, long bytes) {
+
+    public boolean compressed() {
+        return path.getFileName().toString().endsWith(".gz");
+    }
+
+    /**
+     * Whether the segment may contain entries in [from, to). Null bounds are open.
+     */
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return (to == null || first == null || first.isBefore(to))
+            && (from == null || last == null || !last.isBefore(from));
+    }
+
+    /**
+     * The segment's text, decompressed if need be. A closed segment may be compressed
+     * after it was listed, so a plain file that has gone is read from its .gz instead.
+     */
+    public InputStream open() throws IOException {
+        if (compressed()) {
+            return gunzip(path);
+        }
+        try {
+            return Files.newInputStream(path);
+        } catch (NoSuchFileException e) {
+            Path gz = path.resolveSibling(path.getFileName() + ".gz");
+            if (!Files.exists(gz)) {
+                throw e;
+            }
+            return gunzip(gz);
+        }
+    }
+
+    private static InputStream gunzip(Path gz) throws IOException {
+        InputStream raw = Files.newInputStream(gz);
+        try {
+            return new GZIPInputStream(raw, 64 * 1024);
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Segment bookkeeping for the audit log: rotation, compression, retention and manifest.
+ *
+ * Design: the active segment is always actions.log. When it passes the size limit, or
+ * the first entry of a new day arrives, the writer thread closes it and it is renamed
+ * into the audit/ directory as actions-yyyyMMdd-HHmmss.log. A single background thread
+ * gzips closed segments and applies the retention policy, so the writer never waits on
+ * compression. audit/manifest.tsv lists every closed segment with its time range and is
+ * replaced atomically on each change, which lets readers pick the segments for a time
+ * range without opening them.
+ *
+ * Each step is ordered so a crash leaves a state the next start can repair: the manifest
+ * entry is written before the rename (entries whose file never appeared are dropped), and
+ * a compressed copy is moved into place before the plain file is deleted (a leftover
+ * plain file next to its .gz is simply removed).
+ *
+ * The active-segment methods are only called from the audit writer thread.
+ */
+final class AuditSegments {
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String MANIFEST = "manifest.tsv";
+
+    private final Path active;
+    private final Path dir;
+    private final AuditService.Rotation rotation;
+    private final ExecutorService background;
+
+    // Closed segments in age order; guarded by this
+    private final List<AuditSegment> closed = new ArrayList<>();
+
+    private volatile LocalDateTime activeFirst;
+    private volatile LocalDateTime activeLast;
+    private volatile long activeBytes;
+
+    AuditSegments(Path active, AuditService.Rotation rotation) {
+        this.active = active;
+        this.dir = active.resolveSibling("audit");
+        this.rotation = rotation;
+        this.background = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "audit-compress");
+            t.setDaemon(true);
+            return t;
+        });
+        loadManifest();
+        scanActive();
+        background.execute(this::applyRetention);
+    }
+
+    // ---- active segment (writer thread) ----
+
+    boolean needsRoll(LocalDateTime time, int bytes) {
+        if (activeBytes == 0) {
+            return false;
+        }
+        if (activeBytes + bytes > rotation.maxSegmentBytes()) {
+            return true;
+        }
+        return rotation.daily() && activeFirst != null
+            && !time.toLocalDate().equals(activeFirst.toLocalDate());
+    }
+
+    void appended(LocalDateTime time, int bytes) {
+        if (activeFirst == null) {
+            activeFirst = time;
+        }
+        activeLast = time;
+        activeBytes += bytes;
+    }
+
+    /**
+     * Move the (already closed) active file into the segment directory and queue it for
+     * compression. On failure the active file is left in place and keeps growing.
+     */
+    void roll() throws IOException {
+        if (!Files.exists(active)) {
+            return;
+        }
+        Files.createDirectories(dir);
+        LocalDateTime first = activeFirst != null ? activeFirst : LocalDateTime.now();
+        Path target = dir.resolve("actions-" + first.format(STAMP) + ".log");
+        for (int i = 1; Files.exists(target) || Files.exists(gzipOf(target)); i++) {
+            target = dir.resolve("actions-" + first.format(STAMP) + "-" + i + ".log");
+        }
+        AuditSegment segment = new AuditSegment(target, activeFirst, activeLast, activeBytes);
+        synchronized (this) {
+            closed.add(segment);
+            writeManifest();
+        }
+        try {
+            Files.move(active, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            synchronized (this) {
+                closed.remove(segment);
+                writeManifest();
+            }
+            throw e;
+        }
+        activeFirst = null;
+        activeLast = null;
+        activeBytes = 0;
+        background.execute(() -> compress(segment));
+        background.execute(this::applyRetention);
+    }
+
+    // ---- readers ----
+
+    /**
+     * Segments that may hold entries in [from, to), oldest first, including the active
+     * one. Null bounds are open.
+     */
+    List<AuditSegment> segments(LocalDateTime from, LocalDateTime to) {
+        List<AuditSegment> result = new ArrayList<>();
+        synchronized (this) {
+            for (AuditSegment s : closed) {
+                if (s.overlaps(from, to)) {
+                    result.add(s);
+                }
+            }
+        }
+        AuditSegment current = new AuditSegment(active, activeFirst, activeLast, activeBytes);
+        if (current.overlaps(from, to)) {
+            result.add(current);
+        }
+        return result;
+    }
+
+    Path active() {
+        return active;
+    }
+
+    void close() {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---- background work ----
+
+    private void compress(AuditSegment segment) {
+        Path plain = segment.path();
+        if (segment.compressed() || !Files.exists(plain)) {
+            return;
+        }
+        Path gz = gzipOf(plain);
+        Path tmp = gz.resolveSibling(gz.getFileName() + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(plain);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            Files.move(tmp, gz, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            replace(segment, new AuditSegment(gz, segment.first(), segment.last(), segment.bytes()));
+            Files.delete(plain);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void applyRetention() {
+        if (rotation.retentionDays() < 0) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(rotation.retentionDays());
+        List<AuditSegment> expired = new ArrayList<>();
+        synchronized (this) {
+            for (AuditSegment s : closed) {
+                boolean archived = s.path().getParent().getFileName().toString().equals("archive");
+                if (!archived && s.last() != null && s.last().isBefore(cutoff)) {
+                    expired.add(s);
+                }
+            }
+        }
+        for (AuditSegment s : expired) {
+            try {
+                if (rotation.archiveExpired()) {
+                    Path archiveDir = dir.resolve("archive");
+                    Files.createDirectories(archiveDir);
+                    Path moved = archiveDir.resolve(s.path().getFileName());
+                    Files.move(s.path(), moved, StandardCopyOption.ATOMIC_MOVE);
+                    replace(s, new AuditSegment(moved, s.first(), s.last(), s.bytes()));
+                } else {
+                    synchronized (this) {
+                        closed.remove(s);
+                        writeManifest();
+                    }
+                    Files.deleteIfExists(s.path());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void replace(AuditSegment old, AuditSegment updated) {
+        int i = closed.indexOf(old);
+        if (i >= 0) {
+            closed.set(i, updated);
+            writeManifest();
+        }
+    }
+
+    // ---- manifest ----
+
+    private synchronized void writeManifest() {
+        try {
+            Files.createDirectories(dir);
+            List<String> lines = new ArrayList<>(closed.size() + 1);
+            lines.add("# file\tfirst\tlast\tbytes");
+            for (AuditSegment s : closed) {
+                lines.add(dir.relativize(s.path()) + "\t" + format(s.first()) + "\t"
+                          + format(s.last()) + "\t" + s.bytes());
+            }
+            Path tmp = dir.resolve(MANIFEST + ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(MANIFEST),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadManifest() {
+        Path manifest = dir.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        boolean repaired = false;
+        try {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] f = line.split("\t");
+                Path path = dir.resolve(f[0]);
+                AuditSegment s = new AuditSegment(path, parse(f[1]), parse(f[2]), Long.parseLong(f[3]));
+                if (!s.compressed() && Files.exists(gzipOf(path))) {
+                    // Crashed after compressing but before deleting the plain file
+                    Files.deleteIfExists(path);
+                    s = new AuditSegment(gzipOf(path), s.first(), s.last(), s.bytes());
+                    repaired = true;
+                } else if (!Files.exists(path)) {
+                    // Crashed between writing the manifest and the rename
+                    repaired = true;
+                    continue;
+                }
+                closed.add(s);
+                if (!s.compressed()) {
+                    AuditSegment pending = s;
+                    background.execute(() -> compress(pending));
+                }
+            }
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "*.tmp")) {
+                for (Path p : leftovers) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (repaired) {
+            writeManifest();
+        }
+    }
+
+    private void scanActive() {
+        try {
+            if (!Files.exists(active) || Files.size(active) == 0) {
+                return;
+            }
+            activeBytes = Files.size(active);
+            activeLast = LocalDateTime.ofInstant(
+                Files.getLastModifiedTime(active).toInstant(), ZoneId.systemDefault());
+            try (BufferedReader r = Files.newBufferedReader(active, StandardCharsets.UTF_8)) {
+                activeFirst = timestampOf(r.readLine());
+            }
+            if (activeFirst == null) {
+                activeFirst = activeLast;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The timestamp of an actions.log line, or null if it has none.
+     */
+    static LocalDateTime timestampOf(String line) {
+        if (line == null || !line.startsWith("[")) {
+            return null;
+        }
+        int end = line.indexOf(']');
+        try {
+            return end > 1 ? LocalDateTime.parse(line.substring(1, end)) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Path gzipOf(Path plain) {
+        return plain.resolveSibling(plain.getFileName() + ".gz");
+    }
+
+    private static String format(LocalDateTime t) {
+        return t == null ? "-" : t.toString();
+    }
+
+    private static LocalDateTime parse(String s) {
+        return s.equals("-") ? null : LocalDateTime.parse(s);
+    }
+}
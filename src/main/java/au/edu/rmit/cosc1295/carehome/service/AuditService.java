@@ -1,17 +1,461 @@
 package au.edu.rmit.cosc1295.carehome.service;
-import java.io.*;
+
+import au.edu.rmit.cosc1295.carehome.util.MpscRingBuffer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-public class AuditService {
-  private final File file = new File("actions.log");
-  public synchronized void log(String staffId, String action, String details)
-  {
-    String line = String.format("[%s] staff=%s action=%s details=%s%n", LocalDateTime.now(), staffId, action, details);
-    System.out.print(line);
-    try (FileWriter fw = new FileWriter(file, true))
-    {
-        fw.write(line);
-    }
-    catch(IOException ignored) {
-    }
-  }
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit log writer for actions.log.
+ *
+ * Design: {@link #log} only stamps the entry and puts it into a bounded lock-free ring
+ * buffer, so callers (usually the FX thread) never format, touch the file or share a
+ * lock. A single daemon thread named "audit-writer" drains the buffer, formats the
+ * lines into a reusable direct buffer and appends them through one long-lived
+ * {@link FileChannel}. Durability is group commit: the channel is forced at most once
+ * per sync interval, covering every entry written since the previous force.
+ *
+ * Behaviour is explicit and configured with system properties:
+ * - carehome.audit.capacity: ring buffer size (default 8192)
+ * - carehome.audit.backpressure: BLOCK (default) makes producers wait for space when the
+ *   buffer is full; DROP discards the entry and counts it
+ * - carehome.audit.durability: FIRE_AND_FORGET (default) returns once the entry is
+ *   queued; WAIT_FOR_FSYNC returns once the entry has been forced to disk
+ * - carehome.audit.syncIntervalMs: group commit interval (default 50)
+ * - carehome.audit.echo: also print entries to stdout (default true)
+ *
+ * The log is segmented (see {@link AuditSegments}): actions.log is only the active
+ * segment, and closed segments are compressed under audit/. Rotation and retention:
+ * - carehome.audit.maxSegmentMB: roll when the active segment would exceed this (default 16)
+ * - carehome.audit.rollDaily: also roll on the first entry of a new day (default true)
+ * - carehome.audit.retentionDays: age after which closed segments expire; negative
+ *   (the default) keeps them forever
+ * - carehome.audit.retention: DELETE (default) or ARCHIVE, which moves expired segments
+ *   to audit/archive/ and keeps them in the manifest
+ *
+ * Every entry is also written to a binary, indexed store (see {@link AuditIndex}) that
+ * backs {@link #query(AuditQuery)}. On first start the store is backfilled from the
+ * existing text segments.
+ *
+ * With FIRE_AND_FORGET, entries logged in the last sync interval can be lost if the
+ * process dies; {@link #flush()} and {@link #close()} make everything durable.
+ */
+public class AuditService implements AutoCloseable {
+    public enum Backpressure { BLOCK, DROP }
+    public enum Durability { FIRE_AND_FORGET, WAIT_FOR_FSYNC }
+
+    /**
+     * Segment rotation and retention policy.
+     */
+    public record Rotation(long maxSegmentBytes, boolean daily, int retentionDays,
+                           boolean archiveExpired) {
+
+        public static Rotation fromSystemProperties() {
+            return new Rotation(
+                Long.getLong("carehome.audit.maxSegmentMB", 16) * 1024 * 1024,
+                Boolean.parseBoolean(System.getProperty("carehome.audit.rollDaily", "true")),
+                Integer.getInteger("carehome.audit.retentionDays", -1),
+                "ARCHIVE".equals(System.getProperty("carehome.audit.retention", "DELETE")));
+        }
+    }
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int DRAIN_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Path file;
+    private final AuditSegments segments;
+    private final AuditIndex index;
+    private final Rotation rotation;
+    private final MpscRingBuffer<AuditEntry> ring;
+    private final Backpressure backpressure;
+    private final Durability durability;
+    private final long syncIntervalNanos;
+    private final boolean echo;
+    private final Thread writer;
+
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private FileChannel channel;
+
+    // Positions below this are on disk (or failed and were reported)
+    private final Object durableMonitor = new Object();
+    private volatile long durable;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    // Metrics
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blockedWaits = new LongAdder();
+    private long forces;
+    private long writeFailures;
+
+    public AuditService() {
+        this(Paths.get("actions.log"),
+             Integer.getInteger("carehome.audit.capacity", 8192),
+             Backpressure.valueOf(System.getProperty("carehome.audit.backpressure", "BLOCK")),
+             Durability.valueOf(System.getProperty("carehome.audit.durability", "FIRE_AND_FORGET")),
+             Long.getLong("carehome.audit.syncIntervalMs", 50),
+             Boolean.parseBoolean(System.getProperty("carehome.audit.echo", "true")),
+             Rotation.fromSystemProperties());
+    }
+
+    public AuditService(Path file, int capacity, Backpressure backpressure, Durability durability,
+                        long syncIntervalMillis, boolean echo, Rotation rotation) {
+        this.file = file;
+        this.segments = new AuditSegments(file, rotation);
+        this.rotation = rotation;
+        this.index = openIndex(file.resolveSibling("audit").resolve("index"));
+        this.ring = new MpscRingBuffer<>(capacity);
+        this.backpressure = backpressure;
+        this.durability = durability;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.echo = echo;
+        this.writer = new Thread(this::run, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void log(String staffId, String action, String details) {
+        long pos = enqueue(new AuditEntry(LocalDateTime.now(), staffId, action, details));
+        if (pos >= 0 && durability == Durability.WAIT_FOR_FSYNC) {
+            awaitDurable(pos + 1);
+        }
+    }
+
+    private long enqueue(AuditEntry entry) {
+        if (closed) {
+            throw new IllegalStateException("Audit log is closed");
+        }
+        long pos = ring.offer(entry);
+        if (pos < 0 && backpressure == Backpressure.DROP) {
+            dropped.increment();
+            return -1;
+        }
+        if (pos < 0) {
+            blockedWaits.increment();
+        }
+        while (pos < 0) {
+            wakeWriter();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            pos = ring.offer(entry);
+        }
+        if (writerParked) {
+            wakeWriter();
+        }
+        return pos;
+    }
+
+    /**
+     * Block until every entry logged before this call is on disk.
+     */
+    public void flush() {
+        long target = ring.claimed();
+        wakeWriter();
+        awaitDurable(target);
+    }
+
+    /**
+     * Flush and stop the writer thread. Further calls to {@link #log} fail.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        wakeWriter();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segments.close();
+    }
+
+    /**
+     * The active segment (actions.log). It only holds entries since the last roll.
+     */
+    public Path activeSegment() {
+        return file;
+    }
+
+    /**
+     * Segments that may contain entries logged in [from, to), oldest first, with the
+     * active segment last. Null bounds are open. Entries still queued are not included
+     * until they are written; call {@link #flush()} first if that matters.
+     */
+    public List<AuditSegment> segments(LocalDateTime from, LocalDateTime to) {
+        return segments.segments(from, to);
+    }
+
+    /**
+     * Entries matching the query, read from the indexed store. Entries still queued are
+     * not visible until the writer has written them.
+     */
+    public List<AuditEntry> query(AuditQuery query) {
+        if (index == null) {
+            throw new IllegalStateException("Audit index is unavailable");
+        }
+        return index.query(query);
+    }
+
+    public Stats stats() {
+        synchronized (durableMonitor) {
+            return new Stats(ring.claimed(), durable, dropped.sum(), blockedWaits.sum(),
+                             forces, writeFailures);
+        }
+    }
+
+    /**
+     * Point-in-time counters. {@code logged} counts accepted entries and {@code durable}
+     * those known to be on disk.
+     */
+    public record Stats(long logged, long durable, long dropped, long blockedWaits,
+                        long forces, long writeFailures) {
+    }
+
+    private void awaitDurable(long target) {
+        synchronized (durableMonitor) {
+            while (durable < target) {
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void wakeWriter() {
+        LockSupport.unpark(writer);
+    }
+
+    // ---- writer thread ----
+    // The writer is never interrupted: FileChannel closes itself when its thread is.
+
+    private static AuditIndex openIndex(Path dir) {
+        try {
+            return new AuditIndex(dir);
+        } catch (IOException e) {
+            // Text logging must keep working even if the index cannot be opened
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void run() {
+        if (index != null && index.isEmpty()) {
+            backfill();
+        }
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+        while (true) {
+            int n = ring.drain(this::append, DRAIN_BATCH);
+            if (n > 0) {
+                writeOut();
+                dirty = true;
+                if (!ring.isEmpty()) {
+                    continue;
+                }
+            }
+            long now = System.nanoTime();
+            boolean flushWanted = durable < ring.claimed();
+            if (dirty && (now - lastForce >= syncIntervalNanos || closed)) {
+                sync();
+                lastForce = now;
+                dirty = false;
+            } else if (!dirty && flushWanted && ring.isEmpty()) {
+                // Nothing written since the last force: publish progress straight away
+                publishDurable(ring.consumed());
+            }
+            if (closed && ring.isEmpty() && !dirty) {
+                closeChannel();
+                if (index != null) {
+                    try {
+                        index.close();
+                    } catch (IOException e) {
+                        writeFailure(e);
+                    }
+                }
+                return;
+            }
+            long parkFor = dirty ? syncIntervalNanos - (now - lastForce) : IDLE_PARK_NANOS;
+            writerParked = true;
+            if (ring.isEmpty() && !closed) {
+                LockSupport.parkNanos(Math.max(parkFor, 1));
+            }
+            writerParked = false;
+        }
+    }
+
+    private void append(AuditEntry entry) {
+        String line = entry.toLine();
+        if (echo) {
+            System.out.print(line);
+        }
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if (segments.needsRoll(entry.time(), bytes.length)) {
+            roll();
+        }
+        segments.appended(entry.time(), bytes.length);
+        if (bytes.length > out.remaining()) {
+            writeOut();
+        }
+        if (bytes.length > out.capacity()) {
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            out.put(bytes);
+        }
+        if (index != null) {
+            try {
+                index.append(entry);
+            } catch (IOException e) {
+                writeFailure(e);
+            }
+        }
+    }
+
+    /**
+     * Load entries already in the text segments into an empty index. Runs on the writer
+     * thread before it takes new entries, so the text files are not changing underneath.
+     */
+    private void backfill() {
+        for (AuditSegment segment : segments.segments(null, null)) {
+            if (!Files.exists(segment.path())) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(segment.open(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    AuditEntry entry = AuditEntry.parse(line);
+                    if (entry != null) {
+                        index.append(entry);
+                    }
+                }
+            } catch (IOException e) {
+                writeFailure(e);
+            }
+        }
+        try {
+            index.writeOut();
+            index.sync();
+        } catch (IOException e) {
+            writeFailure(e);
+        }
+    }
+
+    private void roll() {
+        writeOut();
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+            closeChannel();
+            segments.roll();
+        } catch (IOException e) {
+            writeFailure(e);
+        }
+        if (index != null) {
+            try {
+                index.roll();
+                if (rotation.retentionDays() >= 0 && !rotation.archiveExpired()) {
+                    index.expire(LocalDateTime.now().minusDays(rotation.retentionDays()));
+                }
+            } catch (IOException e) {
+                writeFailure(e);
+            }
+        }
+    }
+
+    private void writeOut() {
+        out.flip();
+        write(out);
+        out.clear();
+        if (index != null) {
+            try {
+                index.writeOut();
+            } catch (IOException e) {
+                writeFailure(e);
+            }
+        }
+    }
+
+    private void write(ByteBuffer bytes) {
+        try {
+            FileChannel ch = channel();
+            while (bytes.hasRemaining()) {
+                ch.write(bytes);
+            }
+        } catch (IOException e) {
+            writeFailure(e);
+        }
+    }
+
+    private void sync() {
+        long upTo = ring.consumed();
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+            if (index != null) {
+                index.sync();
+            }
+        } catch (IOException e) {
+            writeFailure(e);
+        }
+        synchronized (durableMonitor) {
+            forces++;
+        }
+        publishDurable(upTo);
+    }
+
+    private void publishDurable(long upTo) {
+        synchronized (durableMonitor) {
+            if (upTo > durable) {
+                durable = upTo;
+                durableMonitor.notifyAll();
+            }
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+    private void writeFailure(IOException e) {
+        synchronized (durableMonitor) {
+            writeFailures++;
+        }
+        e.printStackTrace();
+    }
 }
@@ -4,7 +4,6 @@ import au.edu.rmit.cosc1295.carehome.exceptions.AuthorizationException;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.List;
 
 /**
  * Service to handle authorization checks for staff performing actions.
@@ -48,24 +47,15 @@ public class AuthorizationService {
     
     /**
      * Check if staff member is currently rostered (on duty).
-     * Uses current day of week and time to match against assigned shifts.
+     * Uses current day of week and time; the lookup is a single bit test in the
+     * shift service's roster bitmap.
      */
     public boolean isStaffRostered(Staff staff) {
         LocalDateTime now = LocalDateTime.now();
         DayOfWeek currentDay = convertJavaDayToCustom(now.getDayOfWeek());
         LocalTime currentTime = now.toLocalTime();
         
-        List<Shift> shifts = shiftService.getShifts(staff.getId());
-        
-        for (Shift shift : shifts) {
-            if (shift.getDay() == currentDay &&
-                !currentTime.isBefore(shift.getStart()) &&
-                !currentTime.isAfter(shift.getEnd())) {
-                return true;
-            }
-        }
-        
-        return false;
+        return shiftService.isOnDuty(staff.getId(), currentDay, currentTime);
     }
     
     /**
@@ -0,0 +1,304 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import au.edu.rmit.cosc1295.carehome.model.AdministrationRecord;
+import au.edu.rmit.cosc1295.carehome.model.DoseSchedule;
+import au.edu.rmit.cosc1295.carehome.model.Prescription;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryAdministrationRepository;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryPrescriptionRepository;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Scheduled doses that have not been given yet, across the whole facility, ordered by
+ * time: "what is due in the next 30 minutes" and "what is overdue" for a nurse round.
+ *
+ * Design: every prescription's {@link DoseSchedule} is expanded into dose times over a
+ * rolling window, from the lookback before now to the horizon after it, and each dose
+ * not yet given is kept in one set sorted by (time, prescription). {@link #dueBetween} and
+ * {@link #overdueAsOf} are range views of that set, so they cost O(log n + doses
+ * returned) whatever the number of prescriptions. The window moves forward on demand:
+ * a query past its end, or more than an hour passing, expands every schedule over the
+ * new stretch and drops doses that have fallen out of the lookback. That work is
+ * proportional to the doses in the stretch and is shared by all queries until the next
+ * move.
+ *
+ * A dose is given when an administration of the same medicine (ignoring case) to the
+ * same resident is recorded within the tolerance of its time; the nearest pending dose
+ * wins. An administration that names its prescription time (HH:mm) is matched to the
+ * pending dose at that time of day within half a day instead. The index follows the
+ * prescription and administration repositories' change events. It reads every
+ * prescription, including those older than the repository's loaded window, since old
+ * prescriptions stay in force. It is built on first use, or earlier by a startup stage
+ * calling {@link #ensureLoaded()}.
+ *
+ * Settings: carehome.doses.lookbackHours (default 24), carehome.doses.horizonHours
+ * (default 48), carehome.doses.toleranceMinutes (default 60). Schedules are taken from
+ * {@link Prescription#getDoseSchedule()}, so a prescription added through
+ * PrescriptionService is not parsed again; schedules stored before they were validated
+ * and that do not parse are left out and counted in {@link #unscheduled()}.
+ *
+ * Thread safety: the public methods and both event handlers are synchronized on the
+ * index, so a publisher waits for the index, never the other way round. Prescription
+ * events are published under that prescription's stripe lock; administration events
+ * under no lock at all when a dose is saved, or under the administration repository's
+ * monitor from loadOlder. While holding its own lock the index only iterates what is in
+ * memory, reads getLoadedFrom and streams rows from H2, none of which takes those locks.
+ * Because a saved dose is visible before its event arrives, the build may already have
+ * applied it when the event gets here: appliedDuringBuild skips those.
+ */
+public final class DueDoseIndex {
+    private static final Duration LOOKBACK = Duration.ofHours(Long.getLong("carehome.doses.lookbackHours", 24));
+    private static final Duration HORIZON = Duration.ofHours(Long.getLong("carehome.doses.horizonHours", 48));
+    private static final Duration TOLERANCE = Duration.ofMinutes(Long.getLong("carehome.doses.toleranceMinutes", 60));
+    private static final Duration ADVANCE_EVERY = Duration.ofHours(1);
+    private static final Duration NAMED_TIME_TOLERANCE = Duration.ofHours(12);
+
+    /**
+     * A dose that is scheduled and not yet given.
+     */
+    public record DueDose(LocalDateTime at, String prescriptionId, String residentId, String medicine, String dose) {
+    }
+
+    private static final Comparator<DueDose> ORDER =
+        Comparator.comparing(DueDose::at).thenComparing(DueDose::prescriptionId);
+
+    /** One prescription's schedule and the times of its pending doses. */
+    private static final class Rx {
+        final Prescription prescription;
+        final DoseSchedule schedule;
+        final TreeMap<LocalDateTime, DueDose> pending = new TreeMap<>();
+
+        Rx(Prescription prescription, DoseSchedule schedule) {
+            this.prescription = prescription;
+            this.schedule = schedule;
+        }
+    }
+
+    private final InMemoryPrescriptionRepository prescriptions;
+    private final InMemoryAdministrationRepository administrations;
+    private final Map<String, Rx> byId = new HashMap<>();
+    private final Map<String, List<Rx>> byResident = new HashMap<>();
+    private final TreeSet<DueDose> pending = new TreeSet<>(ORDER);
+    private final Set<String> unparsed = new HashSet<>();
+    /** Administrations applied while building; their events may still be on the way. */
+    private Set<String> appliedDuringBuild = new HashSet<>();
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    private LocalDateTime lastAdvance;
+    private boolean built;
+
+    public DueDoseIndex(InMemoryPrescriptionRepository prescriptions, InMemoryAdministrationRepository administrations) {
+        this.prescriptions = prescriptions;
+        this.administrations = administrations;
+    }
+
+    /**
+     * Build the index if that has not happened yet.
+     *
+     * @return the number of pending doses indexed
+     */
+    public synchronized int ensureLoaded() {
+        if (!built) {
+            // A repository load publishes while holding its load lock, which these calls
+            // may wait for; loading before subscribing keeps that load from waiting on us
+            prescriptions.ensureLoaded();
+            administrations.ensureLoaded();
+            prescriptions.subscribe(this::onPrescriptionEvent);
+            administrations.subscribe(this::onAdministrationEvent);
+            LocalDateTime now = LocalDateTime.now();
+            windowStart = now.minus(LOOKBACK);
+            windowEnd = now.plus(HORIZON);
+            lastAdvance = now;
+            LocalDateTime olderThan = prescriptions.getLoadedFrom();
+            if (olderThan != null) {
+                try (Stream<Prescription> older = prescriptions.streamHistory(null, olderThan)) {
+                    older.forEach(this::add);
+                }
+            }
+            prescriptions.forEachEntry((id, p) -> add(p));
+            applyGivenSince(windowStart.minus(TOLERANCE));
+            built = true;
+        }
+        return pending.size();
+    }
+
+    private void applyGivenSince(LocalDateTime from) {
+        LocalDateTime inMemoryFrom = administrations.getLoadedFrom();
+        if (inMemoryFrom != null && inMemoryFrom.isAfter(from)) {
+            try (Stream<AdministrationRecord> older = administrations.streamHistory(from, inMemoryFrom)) {
+                older.forEach(this::markGiven);
+            }
+        }
+        administrations.forEachEntry((id, r) -> {
+            if (!r.getTimestamp().isBefore(from)) {
+                appliedDuringBuild.add(id);
+                markGiven(r);
+            }
+        });
+    }
+
+    /**
+     * Doses due in [from, to) that have not been given, in time order.
+     */
+    public synchronized List<DueDose> dueBetween(LocalDateTime from, LocalDateTime to) {
+        ensureLoaded();
+        advance(to);
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        return List.copyOf(pending.subSet(bound(from), true, bound(to), false));
+    }
+
+    /**
+     * Doses due before {@code t} that have not been given, oldest first. Doses older than
+     * the lookback are no longer tracked.
+     */
+    public synchronized List<DueDose> overdueAsOf(LocalDateTime t) {
+        ensureLoaded();
+        advance(t);
+        return List.copyOf(pending.headSet(bound(t), false));
+    }
+
+    /**
+     * Number of prescriptions whose schedule could not be parsed and so are not indexed.
+     */
+    public synchronized int unscheduled() {
+        ensureLoaded();
+        return unparsed.size();
+    }
+
+    private static DueDose bound(LocalDateTime at) {
+        return new DueDose(at, "", null, null, null);
+    }
+
+    // ---- window ----
+
+    private void advance(LocalDateTime to) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean stale = now.isAfter(lastAdvance.plus(ADVANCE_EVERY));
+        if (!stale && !to.isAfter(windowEnd)) {
+            return;
+        }
+        LocalDateTime newEnd = (to.isAfter(now) ? to : now).plus(HORIZON);
+        if (newEnd.isAfter(windowEnd)) {
+            for (Rx rx : byId.values()) {
+                expand(rx, windowEnd, newEnd);
+            }
+            windowEnd = newEnd;
+        }
+        LocalDateTime newStart = now.minus(LOOKBACK);
+        if (newStart.isAfter(windowStart)) {
+            Iterator<DueDose> expired = pending.headSet(bound(newStart), false).iterator();
+            while (expired.hasNext()) {
+                DueDose d = expired.next();
+                byId.get(d.prescriptionId()).pending.remove(d.at());
+                expired.remove();
+            }
+            windowStart = newStart;
+        }
+        lastAdvance = now;
+        appliedDuringBuild = Set.of();
+    }
+
+    private void expand(Rx rx, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime created = rx.prescription.getCreatedAt();
+        LocalDateTime start = created != null && created.isAfter(from) ? created : from;
+        if (!start.isBefore(to)) {
+            return;
+        }
+        Prescription p = rx.prescription;
+        rx.schedule.forEachDose(start, to, at -> {
+            DueDose d = new DueDose(at, p.getId(), p.getResidentId(), p.getMedicine(), p.getDose());
+            rx.pending.put(at, d);
+            pending.add(d);
+        });
+    }
+
+    // ---- changes ----
+
+    private void add(Prescription p) {
+        remove(p.getId());
+        Optional<DoseSchedule> schedule = p.getDoseSchedule();
+        if (schedule.isEmpty()) {
+            unparsed.add(p.getId());
+            return;
+        }
+        Rx rx = new Rx(p, schedule.get());
+        byId.put(p.getId(), rx);
+        byResident.computeIfAbsent(p.getResidentId(), k -> new ArrayList<>()).add(rx);
+        expand(rx, windowStart, windowEnd);
+    }
+
+    private void remove(String prescriptionId) {
+        unparsed.remove(prescriptionId);
+        Rx rx = byId.remove(prescriptionId);
+        if (rx == null) {
+            return;
+        }
+        pending.removeAll(rx.pending.values());
+        List<Rx> list = byResident.get(rx.prescription.getResidentId());
+        list.remove(rx);
+        if (list.isEmpty()) {
+            byResident.remove(rx.prescription.getResidentId());
+        }
+    }
+
+    /**
+     * Take the pending dose this administration was for off the index, if there is one.
+     */
+    private void markGiven(AdministrationRecord r) {
+        List<Rx> candidates = byResident.getOrDefault(r.getResidentId(), List.of());
+        LocalDateTime ts = r.getTimestamp();
+        LocalTime named = parseTime(r.getPrescriptionTime());
+        Duration tolerance = named != null ? NAMED_TIME_TOLERANCE : TOLERANCE;
+        Rx bestRx = null;
+        LocalDateTime best = null;
+        for (Rx rx : candidates) {
+            if (!rx.prescription.getMedicine().equalsIgnoreCase(r.getMedicine())) {
+                continue;
+            }
+            for (LocalDateTime at : rx.pending.subMap(ts.minus(tolerance), true, ts.plus(tolerance), true).keySet()) {
+                if (named != null && !at.toLocalTime().equals(named)) {
+                    continue;
+                }
+                if (best == null || Duration.between(at, ts).abs().compareTo(Duration.between(best, ts).abs()) < 0) {
+                    best = at;
+                    bestRx = rx;
+                }
+            }
+        }
+        if (bestRx != null) {
+            pending.remove(bestRx.pending.remove(best));
+        }
+    }
+
+    private static LocalTime parseTime(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalTime.parse(text.trim().length() == 4 ? "0" + text.trim() : text.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private synchronized void onPrescriptionEvent(RepositoryEvent<Prescription> e) {
+        if (e.kind() == RepositoryEvent.Kind.REMOVED) {
+            remove(e.key());
+        } else {
+            add(e.entity());
+        }
+    }
+
+    private synchronized void onAdministrationEvent(RepositoryEvent<AdministrationRecord> e) {
+        if (e.kind() == RepositoryEvent.Kind.ADDED && !appliedDuringBuild.contains(e.key())) {
+            markGiven(e.entity());
+        }
+    }
+}
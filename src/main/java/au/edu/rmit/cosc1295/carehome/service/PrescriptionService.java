@@ -2,6 +2,7 @@ package au.edu.rmit.cosc1295.carehome.service;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.exceptions.*;
 import au.edu.rmit.cosc1295.carehome.repository.*;
+import au.edu.rmit.cosc1295.carehome.util.Ids;
 public class PrescriptionService {
   private final AuditService audit;
   private final InMemoryPrescriptionRepository repo;
@@ -9,11 +10,17 @@ public class PrescriptionService {
   {
       audit=a; repo=r;
   }
+  /**
+   * @throws IllegalArgumentException if the schedule cannot be parsed (see {@link DoseSchedule})
+   */
   public Prescription add(String doctorId, Staff actor, String residentId, String med, String dose, String schedule)
           throws AuthorizationException {
     if(actor.getRole()!=Role.DOCTOR && actor.getRole()!=Role.MANAGER)
         throw new AuthorizationException();
-    Prescription p = new Prescription("P-"+System.nanoTime(), residentId, doctorId, med, dose, schedule);
+    // Reject schedules the due-dose index could not follow before anything is stored, and
+    // hand the parsed form on so the index does not parse it again
+    DoseSchedule parsed = DoseSchedule.parse(schedule);
+    Prescription p = new Prescription(String.valueOf(Ids.nextLong()), residentId, doctorId, med, dose, schedule, parsed);
     repo.save(p);
     audit.log(doctorId,"ADD_PRESCRIPTION","resident="+residentId+", med="+med+", dose="+dose+", sched="+schedule);
     return p;
@@ -3,40 +3,134 @@ import au.edu.rmit.cosc1295.carehome.exceptions.*;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.repository.*;
 import au.edu.rmit.cosc1295.carehome.util.Ids;
+import au.edu.rmit.cosc1295.carehome.util.StripedLock;
+import au.edu.rmit.cosc1295.carehome.util.UnitOfWork;
+import java.sql.SQLException;
+import java.util.*;
 public class ResidentService {
+  private static final int PLAN_ATTEMPTS = 3;
+
   private final InMemoryResidentRepository residents;
   private final InMemoryBedRepository beds;
+  private final VacancyIndex vacancies;
   private final AuditService audit;
-  public ResidentService(InMemoryResidentRepository r, InMemoryBedRepository b, AuditService a)
+  public ResidentService(InMemoryResidentRepository r, InMemoryBedRepository b, VacancyIndex v, AuditService a)
   {
       residents=r;
       beds=b;
+      vacancies=v;
       audit=a;
   }
+
+  /**
+   * One resident arriving in an intake.
+   */
+  public record Admission(String name, Gender gender) {}
+  /**
+   * Put a resident in a vacant bed.
+   *
+   * The bed and the resident are locked while the change is made, and the database is
+   * updated in one unit of work whose bed update only applies if the row is still vacant
+   * (UPDATE ... WHERE resident_id IS NULL). Two admissions racing for the same bed, here
+   * or in another process, therefore cannot both succeed: the loser gets
+   * BedOccupiedException and neither memory nor the audit log is touched.
+   *
+   * @throws IllegalStateException if the resident already has a bed (use moveResident)
+   */
   public void assignResidentToBed(String staffId, String residentId, String bedId)
           throws BedOccupiedException
   {
-    Resident r = residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident"));
-    Bed b = beds.findById(bedId).orElseThrow(() -> new NotFoundException("Bed"));
-    if(!b.isVacant())
-        throw new BedOccupiedException();
-    b.assignResident(r.getId()); r.setBedId(b.getId());
-    beds.save(b);
-    residents.save(r);
-    audit.log(staffId,"ASSIGN_RESIDENT","resident="+residentId+", bed="+bedId);
+    residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident"));
+    beds.findById(bedId).orElseThrow(() -> new NotFoundException("Bed"));
+    StripedLock.Held bedLock = beds.lockAll(List.of(bedId));
+    try {
+        StripedLock.Held residentLock = residents.lockAll(List.of(residentId));
+        try {
+            Resident r = residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident"));
+            Bed b = beds.findById(bedId).orElseThrow(() -> new NotFoundException("Bed"));
+            if(!b.isVacant())
+                throw new BedOccupiedException();
+            if(r.getBedId()!=null)
+                // Assigning again would leave the old bed pointing at this resident
+                throw new IllegalStateException("Resident is already in bed " + r.getBedId() + "; use Move instead");
+            UnitOfWork uow = occupy(r, null, b);
+            uow.onCommit(() -> audit.log(staffId,"ASSIGN_RESIDENT","resident="+residentId+", bed="+bedId));
+            commit(uow, List.of(bedId), null);
+        } finally {
+            residentLock.close();
+        }
+    } finally {
+        bedLock.close();
+    }
   }
+  /**
+   * Move a resident to a vacant bed, vacating the bed they are in. Both beds and the
+   * resident are locked, and the release, the claim and the resident update are one unit
+   * of work with the same conditional checks as {@link #assignResidentToBed}, logged as a
+   * single MOVE_RESIDENT entry once committed.
+   */
   public void moveResident(String staffId, String residentId, String toBedId)
           throws BedOccupiedException
   {
-    Resident r = residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident"));
-    String fromBedId = r.getBedId();
-    if(fromBedId!=null) {
-        Bed fromBed = beds.findById(fromBedId).orElseThrow(() -> new NotFoundException("Bed(from)"));
-        fromBed.vacate();
-        beds.save(fromBed);
-    }
-    assignResidentToBed(staffId, residentId, toBedId);
-    audit.log(staffId,"MOVE_RESIDENT","resident="+residentId+", toBed="+toBedId);
+    // Read once: the resident is a live object another move may change before we lock
+    String fromBedId = residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident")).getBedId();
+    List<String> bedIds = new ArrayList<>(List.of(toBedId));
+    if(fromBedId!=null) bedIds.add(fromBedId);
+    StripedLock.Held bedLocks = beds.lockAll(bedIds);
+    try {
+        StripedLock.Held residentLock = residents.lockAll(List.of(residentId));
+        try {
+            Resident r = residents.findById(residentId).orElseThrow(() -> new NotFoundException("Resident"));
+            if(!Objects.equals(r.getBedId(), fromBedId))
+                throw new BedOccupiedException("Resident was moved by someone else; try again");
+            Bed from = r.getBedId()==null ? null
+                : beds.findById(r.getBedId()).orElseThrow(() -> new NotFoundException("Bed(from)"));
+            Bed to = beds.findById(toBedId).orElseThrow(() -> new NotFoundException("Bed"));
+            if(to==from)
+                return;
+            if(!to.isVacant())
+                throw new BedOccupiedException();
+            UnitOfWork uow = occupy(r, from, to);
+            uow.onCommit(() -> audit.log(staffId,"MOVE_RESIDENT",
+                                         "resident="+residentId+", fromBed="+fromBedId+", toBed="+toBedId));
+            commit(uow, bedIds, null);
+        } finally {
+            residentLock.close();
+        }
+    } finally {
+        bedLocks.close();
+    }
+  }
+  /**
+   * The writes that take {@code r} out of {@code from} (if any) and put them in {@code to}.
+   * Callers hold the locks of every bed involved and of the resident.
+   */
+  private UnitOfWork occupy(Resident r, Bed from, Bed to)
+  {
+    UnitOfWork uow = new UnitOfWork();
+    if(from!=null) beds.release(uow, from, r.getId());
+    beds.claim(uow, to, r.getId());
+    residents.placeIn(uow, r, to.getId());
+    return uow;
+  }
+  /**
+   * Commit {@code uow}. If a conditional bed update found the database different from
+   * memory, reload {@code bedIds} from the database and throw BedOccupiedException with
+   * {@code conflict} (null for the default message).
+   */
+  private void commit(UnitOfWork uow, List<String> bedIds, String conflict) throws BedOccupiedException
+  {
+    boolean committed;
+    try {
+        committed = uow.commit();
+    } catch (SQLException e) {
+        throw new IllegalStateException("Could not save bed assignment; nothing was changed", e);
+    }
+    if(!committed) {
+        // The database disagrees with memory: believe the database
+        for(String bedId : bedIds) beds.reload(bedId);
+        throw conflict==null ? new BedOccupiedException() : new BedOccupiedException(conflict);
+    }
   }
     public Resident addResident(String staffId, String name, Gender gender)
     {
@@ -45,4 +139,116 @@ public class ResidentService {
         audit.log(staffId, "ADD_RESIDENT", "resident=" + r.getId() + ", name=" + name + ", gender=" + gender);
         return r;
     }
+
+    /**
+     * A free bed a new resident of this gender may take (see {@link VacancyIndex}).
+     */
+    public Optional<String> findVacantBed(Gender gender)
+    {
+        return vacancies.findBed(gender);
+    }
+
+    /**
+     * Admit a whole intake: create a resident for each admission and give each one a bed,
+     * keeping to the room gender rule. Beds are chosen in one pass over the vacancy index
+     * and every resident and bed row is written in a single transaction, with the bed
+     * updates conditional on the beds still being vacant, so either the whole intake is
+     * admitted or nobody is.
+     *
+     * The plan is made without locks, so every bed in the chosen rooms is then locked and
+     * the rooms are checked again: the chosen beds must still be vacant and nobody of
+     * another gender may have been put in their rooms meanwhile. If that fails the intake
+     * is planned again, up to {@value #PLAN_ATTEMPTS} times.
+     *
+     * @return the new residents, in the order of {@code intake}, with their beds set
+     * @throws BedOccupiedException if there are not enough suitable beds, or the chosen
+     *         rooms kept changing or a chosen bed was taken by someone else before the
+     *         intake could be written
+     */
+    public List<Resident> bulkAdmit(String staffId, List<Admission> intake)
+            throws BedOccupiedException
+    {
+        if (intake.isEmpty()) return List.of();
+        List<Gender> genders = new ArrayList<>(intake.size());
+        for (Admission a : intake) genders.add(a.gender());
+        for (int attempt = 1; ; attempt++) {
+            List<String> bedIds = vacancies.plan(genders);
+            if (bedIds == null)
+                throw new BedOccupiedException("Not enough suitable vacant beds for an intake of " + intake.size());
+            // Whole rooms, so no assign or move can change who is in them until we commit
+            Map<String, List<String>> roomOf = new HashMap<>();
+            Set<String> lockIds = new LinkedHashSet<>();
+            for (String bedId : bedIds) {
+                List<String> room = vacancies.roomOf(bedId);
+                roomOf.put(bedId, room);
+                lockIds.addAll(room);
+            }
+
+            StripedLock.Held held = beds.lockAll(lockIds);
+            try {
+                String conflict = roomConflict(intake, bedIds, roomOf);
+                if (conflict != null) {
+                    if (attempt < PLAN_ATTEMPTS) continue;
+                    throw new BedOccupiedException(conflict + "; no residents were admitted");
+                }
+                List<Bed> chosen = new ArrayList<>(bedIds.size());
+                for (String bedId : bedIds)
+                    chosen.add(beds.findById(bedId).orElseThrow(() -> new NotFoundException("Bed")));
+
+                Set<String> ids = new HashSet<>();
+                List<Resident> admitted = new ArrayList<>(intake.size());
+                UnitOfWork uow = new UnitOfWork();
+                for (int i = 0; i < intake.size(); i++) {
+                    Admission a = intake.get(i);
+                    String id;
+                    do {
+                        id = Ids.next("R");
+                    } while (!ids.add(id) || residents.findById(id).isPresent());
+                    Resident r = new Resident(id, a.name(), a.gender());
+                    admitted.add(r);
+                    // Residents first, so the bed events that follow resolve their occupants
+                    residents.placeIn(uow, r, bedIds.get(i));
+                }
+                for (int i = 0; i < chosen.size(); i++)
+                    beds.claim(uow, chosen.get(i), admitted.get(i).getId());
+                for (Resident r : admitted)
+                    uow.onCommit(() -> audit.log(staffId, "ADMIT_RESIDENT", "resident=" + r.getId() + ", name=" + r.getName()
+                                                 + ", gender=" + r.getGender() + ", bed=" + r.getBedId()));
+                commit(uow, bedIds, "A chosen bed was taken during admission; no residents were admitted");
+                return admitted;
+            } finally {
+                held.close();
+            }
+        }
+    }
+
+    /**
+     * Why the planned beds can no longer be used, or null if they can: a chosen bed is
+     * taken, or its room now holds someone of a different gender from the admission
+     * planned for it. Callers hold the locks of every bed in those rooms.
+     */
+    private String roomConflict(List<Admission> intake, List<String> bedIds, Map<String, List<String>> roomOf)
+    {
+        Map<String, Gender> planned = new HashMap<>();
+        for (int i = 0; i < bedIds.size(); i++) planned.put(bedIds.get(i), intake.get(i).gender());
+        for (String bedId : bedIds) {
+            Gender gender = planned.get(bedId);
+            for (String mateId : roomOf.get(bedId)) {
+                Bed mate = beds.findById(mateId).orElse(null);
+                if (mate == null) continue;
+                Gender other;
+                if (planned.containsKey(mateId)) {
+                    if (!mate.isVacant()) return "Bed " + mateId + " was taken during admission";
+                    other = planned.get(mateId);
+                } else {
+                    // An occupant not loaded yet has no known gender, as in the vacancy index
+                    other = mate.isVacant() ? null
+                        : residents.findById(mate.getResidentId()).map(Resident::getGender).orElse(null);
+                }
+                if (other != null && other != gender)
+                    return "The room of bed " + bedId + " now has a " + other + " resident";
+            }
+        }
+        return null;
+    }
 }
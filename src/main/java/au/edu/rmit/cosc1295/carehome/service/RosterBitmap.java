@@ -0,0 +1,109 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import au.edu.rmit.cosc1295.carehome.model.DayOfWeek;
+import au.edu.rmit.cosc1295.carehome.model.Shift;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weekly on-duty bitmap per staff member, one bit per minute (7 x 1440 slots).
+ *
+ * Design: a shift sets the bits for its minutes [start, end). "Is X on duty at T" is a
+ * single bit test, and "who is on duty at T" is one bit test per staff member with no
+ * allocation beyond the result list. Shift end times are inclusive, so an instant that
+ * falls exactly on a minute boundary also counts as on duty when the previous minute is
+ * set; times are otherwise resolved to the minute.
+ *
+ * Each bitmap is copy-on-write: writers build a new array and publish it, so readers never
+ * lock and never observe a partially applied shift. Writers for the same staff member must
+ * be serialised by the caller (ShiftService holds the staff member's stripe lock).
+ */
+public final class RosterBitmap {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int SLOTS = DayOfWeek.values().length * MINUTES_PER_DAY;
+    private static final int WORDS = (SLOTS + 63) >>> 6;
+
+    private final Map<String, long[]> bitsByStaff = new ConcurrentHashMap<>();
+
+    /**
+     * Add a shift to the staff member's bitmap.
+     */
+    public void add(String staffId, Shift shift) {
+        long[] current = bitsByStaff.get(staffId);
+        long[] updated = current != null ? current.clone() : new long[WORDS];
+        set(updated, shift);
+        bitsByStaff.put(staffId, updated);
+    }
+
+    /**
+     * Replace the staff member's bitmap with one built from the given shifts.
+     */
+    public void rebuild(String staffId, List<Shift> shifts) {
+        if (shifts.isEmpty()) {
+            bitsByStaff.remove(staffId);
+            return;
+        }
+        long[] bits = new long[WORDS];
+        for (Shift shift : shifts) {
+            set(bits, shift);
+        }
+        bitsByStaff.put(staffId, bits);
+    }
+
+    public boolean isOnDuty(String staffId, DayOfWeek day, LocalTime time) {
+        long[] bits = bitsByStaff.get(staffId);
+        return bits != null && test(bits, day, time);
+    }
+
+    /**
+     * Ids of every staff member on duty at the given day and time.
+     */
+    public List<String> onDutyAt(DayOfWeek day, LocalTime time) {
+        List<String> result = new ArrayList<>();
+        bitsByStaff.forEach((staffId, bits) -> {
+            if (test(bits, day, time)) {
+                result.add(staffId);
+            }
+        });
+        return result;
+    }
+
+    private static boolean test(long[] bits, DayOfWeek day, LocalTime time) {
+        int minute = time.getHour() * 60 + time.getMinute();
+        int slot = day.ordinal() * MINUTES_PER_DAY + minute;
+        if (isSet(bits, slot)) {
+            return true;
+        }
+        // Exactly on a shift's end time
+        boolean onBoundary = time.getSecond() == 0 && time.getNano() == 0;
+        return onBoundary && minute > 0 && isSet(bits, slot - 1);
+    }
+
+    private static boolean isSet(long[] bits, int slot) {
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private static void set(long[] bits, Shift shift) {
+        int base = shift.getDay().ordinal() * MINUTES_PER_DAY;
+        int from = base + shift.getStart().toSecondOfDay() / 60;
+        int to = base + shift.getEnd().toSecondOfDay() / 60;
+        if (from >= to) {
+            return;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (firstWord == lastWord) {
+            bits[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        bits[firstWord] |= firstMask;
+        Arrays.fill(bits, firstWord + 1, lastWord, -1L);
+        bits[lastWord] |= lastMask;
+    }
+}
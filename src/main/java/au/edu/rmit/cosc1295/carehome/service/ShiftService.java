@@ -3,19 +3,100 @@ import au.edu.rmit.cosc1295.carehome.exceptions.*;
 import au.edu.rmit.cosc1295.carehome.model.*;
 import au.edu.rmit.cosc1295.carehome.repository.*;
 import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import au.edu.rmit.cosc1295.carehome.util.StripedLock;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import java.sql.*;
 import java.time.LocalTime;
 
+/**
+ * Shift roster per staff member.
+ *
+ * Each staff member's shifts live in a {@link StaffRoster}, which keeps them sorted per
+ * day with running hour totals so that validating a new shift is O(log n).
+ *
+ * Thread safety: {@link #assignShift} validates, persists and adds the shift while
+ * holding that staff member's stripe lock, so concurrent assignments for the same person
+ * are serialised and none are lost. Readers only take the roster's own short monitor.
+ *
+ * Alongside the shift lists a {@link RosterBitmap} is kept up to date, so on-duty checks
+ * for authorisation and handover screens are bit tests rather than scans over shifts.
+ *
+ * The shifts table is read on first use, or earlier by a startup stage calling
+ * {@link #ensureLoaded()}.
+ */
 public class ShiftService {
     private final InMemoryStaffRepository staffRepo;
     private final AuditService audit;
-    private final Map<String, List<Shift>> shiftsByStaff = new HashMap<>();
+    private static final StaffRoster EMPTY_ROSTER = new StaffRoster();
+    private final Map<String, StaffRoster> rosters = new ConcurrentHashMap<>();
+    private final StripedLock locks = new StripedLock(64);
+    private final RosterBitmap onDuty = new RosterBitmap();
+    private volatile boolean loaded;
+    private final List<BiConsumer<String, Shift>> listeners = new CopyOnWriteArrayList<>();
     
     public ShiftService(InMemoryStaffRepository r, AuditService a) {
         staffRepo = r;
         audit = a;
-        loadShiftsFromDatabase();
+    }
+    
+    /**
+     * Load the shifts table if that has not happened yet.
+     *
+     * @return the number of shifts in memory
+     */
+    public int ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    loadShiftsFromDatabase();
+                    loaded = true;
+                }
+            }
+        }
+        int shifts = 0;
+        for (StaffRoster roster : rosters.values()) {
+            shifts += roster.shifts().size();
+        }
+        return shifts;
+    }
+    
+    /**
+     * Fill the rosters from a snapshot (staff id to shifts) instead of the database.
+     * Does nothing and returns false if they have already been loaded.
+     */
+    public synchronized boolean restore(Map<String, List<Shift>> shifts) {
+        if (loaded) {
+            return false;
+        }
+        shifts.forEach((staffId, list) -> {
+            StaffRoster roster = rosters.computeIfAbsent(staffId, k -> new StaffRoster());
+            list.forEach(roster::add);
+            onDuty.rebuild(staffId, roster.shifts());
+        });
+        loaded = true;
+        return true;
+    }
+    
+    /**
+     * Every staff member's shifts, for a snapshot.
+     */
+    public Map<String, List<Shift>> allShifts() {
+        ensureLoaded();
+        Map<String, List<Shift>> all = new HashMap<>();
+        rosters.forEach((staffId, roster) -> all.put(staffId, roster.shifts()));
+        return all;
+    }
+    
+    /**
+     * Register {@code listener} for every shift assigned from now on; it is called with the
+     * staff id and the shift after the shift is stored. Returns a handle that removes it.
+     */
+    public Runnable subscribe(BiConsumer<String, Shift> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
     }
     
     private void loadShiftsFromDatabase() {
@@ -34,49 +115,72 @@ public class ShiftService {
                 LocalTime end = endTime.toLocalTime();
                 
                 Shift shift = new Shift(day, start, end);
-                shiftsByStaff.computeIfAbsent(staffId, k -> new ArrayList<>()).add(shift);
+                rosters.computeIfAbsent(staffId, k -> new StaffRoster()).add(shift);
             }
+            rosters.forEach((staffId, roster) -> onDuty.rebuild(staffId, roster.shifts()));
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
     
+    /**
+     * Immutable snapshot of a staff member's shifts, ordered by day and start time.
+     */
     public List<Shift> getShifts(String staffId) {
-        return shiftsByStaff.getOrDefault(staffId, new ArrayList<>());
+        return getRoster(staffId).shifts();
+    }
+    
+    /**
+     * A staff member's roster with its hour totals and compliance state. Staff without
+     * shifts get an empty roster.
+     */
+    public StaffRoster getRoster(String staffId) {
+        ensureLoaded();
+        return rosters.getOrDefault(staffId, EMPTY_ROSTER);
+    }
+    
+    /**
+     * Whether the staff member is rostered at the given day and time (shift end inclusive).
+     */
+    public boolean isOnDuty(String staffId, DayOfWeek day, LocalTime time) {
+        ensureLoaded();
+        return onDuty.isOnDuty(staffId, day, time);
+    }
+    
+    /**
+     * Ids of all staff rostered at the given day and time.
+     */
+    public List<String> onDutyAt(DayOfWeek day, LocalTime time) {
+        ensureLoaded();
+        return onDuty.onDutyAt(day, time);
     }
     
     public void assignShift(String managerId, String staffId, Shift shift)
             throws ShiftViolationException {
+        ensureLoaded();
         staffRepo.findById(staffId).orElseThrow(() -> new NotFoundException("Staff"));
-        var list = shiftsByStaff.computeIfAbsent(staffId, k -> new ArrayList<>());
-        
-        for (Shift e : list) {
-            if (e.overlaps(shift)) {
-                throw new ShiftViolationException("Overlapping shift: " + e + " vs " + shift);
-            }
-        }
-        
-        if (shift.hours() > Rules.MAX_SHIFT_HOURS) {
-            throw new ShiftViolationException("Shift exceeds " + Rules.MAX_SHIFT_HOURS + "h");
-        }
-        
-        long dailyHours = list.stream()
-            .filter(x -> x.getDay() == shift.getDay())
-            .mapToLong(Shift::hours).sum() + shift.hours();
-        if (dailyHours > Rules.MAX_DAILY_HOURS) {
-            throw new ShiftViolationException("Daily hours exceed " + Rules.MAX_DAILY_HOURS + "h");
-        }
-        
-        long weeklyHours = list.stream().mapToLong(Shift::hours).sum() + shift.hours();
-        if (weeklyHours > Rules.MAX_WEEKLY_HOURS) {
-            throw new ShiftViolationException("Weekly hours exceed " + Rules.MAX_WEEKLY_HOURS + "h");
+        var lock = locks.get(staffId);
+        lock.lock();
+        try {
+            validateAndAdd(staffId, shift);
+        } finally {
+            lock.unlock();
         }
+        audit.log(managerId, "ASSIGN_SHIFT", staffId + " -> " + shift);
+    }
+    
+    private void validateAndAdd(String staffId, Shift shift) throws ShiftViolationException {
+        StaffRoster roster = rosters.computeIfAbsent(staffId, k -> new StaffRoster());
+        roster.validate(shift);
         
         // Save to database
         saveShiftToDatabase(staffId, shift);
         
-        list.add(shift);
-        audit.log(managerId, "ASSIGN_SHIFT", staffId + " -> " + shift);
+        roster.add(shift);
+        onDuty.add(staffId, shift);
+        for (BiConsumer<String, Shift> listener : listeners) {
+            listener.accept(staffId, shift);
+        }
     }
     
     private void saveShiftToDatabase(String staffId, Shift shift) {
@@ -0,0 +1,165 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import au.edu.rmit.cosc1295.carehome.exceptions.ShiftViolationException;
+import au.edu.rmit.cosc1295.carehome.model.DayOfWeek;
+import au.edu.rmit.cosc1295.carehome.model.Shift;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One staff member's weekly roster, indexed for rule checks.
+ *
+ * Design: shifts are kept in a sorted map per day keyed by start time, with running
+ * per-day and weekly hour totals. Shifts on a valid roster never overlap, so a new shift
+ * can only overlap the shift starting at or before it or the next one after it; checking
+ * those two neighbours makes validation O(log n). The totals and a few compliance flags
+ * are updated on every add, so compliance queries read counters instead of rescanning.
+ *
+ * Rosters loaded from the database are added unchecked. If they already break a rule
+ * the flags record it and {@link #isCompliant()} reports it; an overlap is always
+ * detected because, in start order, any overlap implies an adjacent one. Once a roster
+ * is known to overlap, overlap checks fall back to scanning the day.
+ *
+ * Reads are synchronized on the roster and cheap; writes come from ShiftService while it
+ * holds the staff member's stripe lock.
+ */
+public final class StaffRoster {
+    private static final int DAYS = DayOfWeek.values().length;
+
+    private final List<TreeMap<LocalTime, List<Shift>>> byDay = new ArrayList<>(DAYS);
+    private final long[] dailyHours = new long[DAYS];
+    private long weeklyHours;
+    private int size;
+    private boolean overlapping;
+    private int overlongShifts;
+    private List<Shift> snapshot = List.of();
+
+    StaffRoster() {
+        for (int i = 0; i < DAYS; i++) {
+            byDay.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Throw if adding the shift would break an overlap or hours rule.
+     */
+    synchronized void validate(Shift shift) throws ShiftViolationException {
+        Shift clash = findOverlap(shift);
+        if (clash != null) {
+            throw new ShiftViolationException("Overlapping shift: " + clash + " vs " + shift);
+        }
+        if (shift.hours() > Rules.MAX_SHIFT_HOURS) {
+            throw new ShiftViolationException("Shift exceeds " + Rules.MAX_SHIFT_HOURS + "h");
+        }
+        if (dailyHours[shift.getDay().ordinal()] + shift.hours() > Rules.MAX_DAILY_HOURS) {
+            throw new ShiftViolationException("Daily hours exceed " + Rules.MAX_DAILY_HOURS + "h");
+        }
+        if (weeklyHours + shift.hours() > Rules.MAX_WEEKLY_HOURS) {
+            throw new ShiftViolationException("Weekly hours exceed " + Rules.MAX_WEEKLY_HOURS + "h");
+        }
+    }
+
+    /**
+     * Add a shift without checking rules; violations are recorded in the compliance flags.
+     */
+    synchronized void add(Shift shift) {
+        if (findOverlap(shift) != null) {
+            overlapping = true;
+        }
+        if (shift.hours() > Rules.MAX_SHIFT_HOURS) {
+            overlongShifts++;
+        }
+        int day = shift.getDay().ordinal();
+        byDay.get(day).computeIfAbsent(shift.getStart(), k -> new ArrayList<>(1)).add(shift);
+        dailyHours[day] += shift.hours();
+        weeklyHours += shift.hours();
+        size++;
+        snapshot = null;
+    }
+
+    private Shift findOverlap(Shift shift) {
+        TreeMap<LocalTime, List<Shift>> day = byDay.get(shift.getDay().ordinal());
+        if (overlapping) {
+            // Neighbour checks rely on existing shifts being disjoint; scan the day instead
+            for (List<Shift> shifts : day.values()) {
+                for (Shift s : shifts) {
+                    if (s.overlaps(shift)) {
+                        return s;
+                    }
+                }
+            }
+            return null;
+        }
+        Map.Entry<LocalTime, List<Shift>> before = day.floorEntry(shift.getStart());
+        if (before != null) {
+            for (Shift s : before.getValue()) {
+                if (s.overlaps(shift)) {
+                    return s;
+                }
+            }
+        }
+        Map.Entry<LocalTime, List<Shift>> after = day.higherEntry(shift.getStart());
+        if (after != null) {
+            for (Shift s : after.getValue()) {
+                if (s.overlaps(shift)) {
+                    return s;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Immutable list of all shifts, ordered by day then start time.
+     */
+    public synchronized List<Shift> shifts() {
+        if (snapshot == null) {
+            List<Shift> all = new ArrayList<>(size);
+            for (TreeMap<LocalTime, List<Shift>> day : byDay) {
+                day.values().forEach(all::addAll);
+            }
+            snapshot = List.copyOf(all);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Shifts on the given day, ordered by start time.
+     */
+    public synchronized List<Shift> shiftsOn(DayOfWeek day) {
+        List<Shift> result = new ArrayList<>();
+        byDay.get(day.ordinal()).values().forEach(result::addAll);
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long dailyHours(DayOfWeek day) {
+        return dailyHours[day.ordinal()];
+    }
+
+    public synchronized long weeklyHours() {
+        return weeklyHours;
+    }
+
+    /**
+     * Whether the roster satisfies every shift rule: no overlaps, no overlong shift, and
+     * daily and weekly hours within their limits.
+     */
+    public synchronized boolean isCompliant() {
+        if (overlapping || overlongShifts > 0 || weeklyHours > Rules.MAX_WEEKLY_HOURS) {
+            return false;
+        }
+        for (long hours : dailyHours) {
+            if (hours > Rules.MAX_DAILY_HOURS) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -11,9 +11,7 @@ public class StaffService {
       audit=a;
   }
   public void saveOrUpdateCredentials(String managerId, Staff staff, String username, String password){
-    staff.setUsername(username);
-    staff.setPassword(password);
-    staffRepo.save(staff);
+    staffRepo.updateCredentials(staff, username, password);
     audit.log(managerId,"UPSERT_STAFF", staff.getId());
   }
     public Staff addStaff(String managerId, String name, Role role, String username, String password) {
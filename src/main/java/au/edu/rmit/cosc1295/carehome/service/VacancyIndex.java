@@ -0,0 +1,336 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import au.edu.rmit.cosc1295.carehome.model.Bed;
+import au.edu.rmit.cosc1295.carehome.model.BedLocation;
+import au.edu.rmit.cosc1295.carehome.model.Gender;
+import au.edu.rmit.cosc1295.carehome.model.Resident;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryBedRepository;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryResidentRepository;
+import au.edu.rmit.cosc1295.carehome.repository.RepositoryEvent;
+import java.util.*;
+
+/**
+ * Free beds per room and the gender make-up of each room, for allocating beds without
+ * scanning every bed.
+ *
+ * Design: beds are grouped into rooms by their W#-R#-B# id ({@link BedLocation}); ids that
+ * do not parse form one extra room at the end. Each room keeps a BitSet of free slots and
+ * a count of occupants per {@link Gender}. Rooms with free beds are filed either under
+ * the single gender of their occupants or as empty; mixed rooms (only possible from data
+ * entered before this rule) are not offered. The index follows the bed and resident
+ * repositories' change events, so every path that saves a bed or resident keeps it
+ * current. It is built on first use, or earlier by a startup stage calling
+ * {@link #ensureLoaded()}.
+ *
+ * Room rule for allocation: a room only takes residents of the gender already in it; an
+ * empty room takes anyone and from then on belongs to that gender.
+ *
+ * Thread safety: all methods are synchronized. Events arrive under repository locks, so
+ * the index never calls back into the repositories while holding its own lock except
+ * for reads, which take no locks.
+ */
+public final class VacancyIndex {
+    private static final int OTHER = Integer.MAX_VALUE;
+
+    private static final class Room implements Comparable<Room> {
+        final int ward;
+        final int number;
+        final List<String> slots = new ArrayList<>();
+        final BitSet free = new BitSet();
+        final int[] genders = new int[Gender.values().length];
+        int occupied;
+
+        Room(int ward, int number) {
+            this.ward = ward;
+            this.number = number;
+        }
+
+        /** The single gender of the occupants, or null if the room is empty or mixed. */
+        Gender gender() {
+            Gender only = null;
+            for (Gender g : Gender.values()) {
+                if (genders[g.ordinal()] > 0) {
+                    if (only != null) {
+                        return null;
+                    }
+                    only = g;
+                }
+            }
+            return only;
+        }
+
+        @Override
+        public int compareTo(Room o) {
+            return ward != o.ward ? Integer.compare(ward, o.ward) : Integer.compare(number, o.number);
+        }
+    }
+
+    /** Where a bed is in the index and what it currently counts towards. */
+    private static final class Slot {
+        final Room room;
+        final int index;
+        boolean counted;
+        boolean free;
+        String residentId;
+        Gender occupant;
+
+        Slot(Room room, int index) {
+            this.room = room;
+            this.index = index;
+        }
+    }
+
+    private final InMemoryBedRepository beds;
+    private final InMemoryResidentRepository residents;
+    private final Map<Long, Room> rooms = new HashMap<>();
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final Map<Gender, TreeSet<Room>> open = new EnumMap<>(Gender.class);
+    private final TreeSet<Room> empty = new TreeSet<>();
+    private int vacant;
+    private boolean built;
+
+    public VacancyIndex(InMemoryBedRepository beds, InMemoryResidentRepository residents) {
+        this.beds = beds;
+        this.residents = residents;
+        for (Gender g : Gender.values()) {
+            open.put(g, new TreeSet<>());
+        }
+    }
+
+    /**
+     * Build the index from the repositories if that has not happened yet.
+     *
+     * @return the number of beds indexed
+     */
+    public synchronized int ensureLoaded() {
+        if (!built) {
+            // Both tables are loaded before subscribing, so a load running on a startup
+            // thread never delivers events to (and waits on) this index
+            beds.ensureLoaded();
+            residents.ensureLoaded();
+            beds.subscribe(this::onBedEvent);
+            residents.subscribe(this::onResidentEvent);
+            for (Bed bed : beds.findAll()) {
+                update(bed);
+            }
+            built = true;
+        }
+        return slots.size();
+    }
+
+    // ---- maintenance ----
+
+    private synchronized void onBedEvent(RepositoryEvent<Bed> event) {
+        if (event.kind() == RepositoryEvent.Kind.REMOVED) {
+            remove(event.key());
+        } else {
+            update(event.entity());
+        }
+    }
+
+    private synchronized void onResidentEvent(RepositoryEvent<Resident> event) {
+        // Covers a gender change, and a resident saved after the bed that points to it
+        Resident r = event.entity();
+        Slot slot = r.getBedId() == null ? null : slots.get(r.getBedId());
+        if (slot != null && slot.counted && r.getId().equals(slot.residentId)) {
+            set(slot, r.getId(), event.kind() == RepositoryEvent.Kind.REMOVED ? null : r.getGender());
+        }
+    }
+
+    private void update(Bed bed) {
+        Slot slot = slots.get(bed.getId());
+        if (slot == null) {
+            slot = addSlot(bed.getId());
+        }
+        if (bed.isVacant()) {
+            set(slot, null, null);
+        } else {
+            // An occupant not loaded yet counts as occupied with no gender until it is
+            Resident r = residents.findById(bed.getResidentId()).orElse(null);
+            set(slot, bed.getResidentId(), r != null ? r.getGender() : null);
+        }
+    }
+
+    private Slot addSlot(String bedId) {
+        BedLocation loc = BedLocation.parse(bedId);
+        int ward = loc != null ? loc.ward() : OTHER;
+        int number = loc != null ? loc.room() : OTHER;
+        Room room = rooms.computeIfAbsent(roomKey(ward, number), k -> new Room(ward, number));
+        Slot slot = new Slot(room, room.slots.size());
+        room.slots.add(bedId);
+        slots.put(bedId, slot);
+        return slot;
+    }
+
+    private void remove(String bedId) {
+        Slot slot = slots.remove(bedId);
+        if (slot != null) {
+            retract(slot);
+            slot.room.slots.set(slot.index, null);
+            refile(slot.room);
+        }
+    }
+
+    /**
+     * Record the bed as free (residentId null) or occupied by a resident of the given
+     * gender (null if not known yet).
+     */
+    private void set(Slot slot, String residentId, Gender occupant) {
+        retract(slot);
+        Room room = slot.room;
+        boolean free = residentId == null;
+        slot.counted = true;
+        slot.free = free;
+        slot.residentId = residentId;
+        slot.occupant = free ? null : occupant;
+        if (free) {
+            room.free.set(slot.index);
+            vacant++;
+        } else {
+            room.occupied++;
+            if (occupant != null) {
+                room.genders[occupant.ordinal()]++;
+            }
+        }
+        refile(room);
+    }
+
+    /** Take the slot's current state back out of its room's totals. */
+    private void retract(Slot slot) {
+        if (!slot.counted) {
+            return;
+        }
+        Room room = slot.room;
+        if (slot.free) {
+            room.free.clear(slot.index);
+            vacant--;
+        } else {
+            room.occupied--;
+            if (slot.occupant != null) {
+                room.genders[slot.occupant.ordinal()]--;
+            }
+        }
+        slot.counted = false;
+    }
+
+    private void refile(Room room) {
+        empty.remove(room);
+        for (TreeSet<Room> set : open.values()) {
+            set.remove(room);
+        }
+        if (room.free.isEmpty()) {
+            return;
+        }
+        if (room.occupied == 0) {
+            empty.add(room);
+        } else {
+            Gender g = room.gender();
+            if (g != null) {
+                open.get(g).add(room);
+            }
+        }
+    }
+
+    private static long roomKey(int ward, int room) {
+        return ((long) ward << 32) | (room & 0xFFFFFFFFL);
+    }
+
+    // ---- queries ----
+
+    public synchronized int vacantCount() {
+        ensureLoaded();
+        return vacant;
+    }
+
+    public synchronized boolean isVacant(String bedId) {
+        ensureLoaded();
+        Slot slot = slots.get(bedId);
+        return slot != null && slot.room.free.get(slot.index);
+    }
+
+    /**
+     * Free beds in one room, in the order they were added.
+     */
+    public synchronized List<String> vacantIn(int ward, int room) {
+        ensureLoaded();
+        Room r = rooms.get(roomKey(ward, room));
+        if (r == null) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = r.free.nextSetBit(0); i >= 0; i = r.free.nextSetBit(i + 1)) {
+            result.add(r.slots.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Every bed in the same room as {@code bedId}, itself included; just {@code bedId} if
+     * the index does not know it.
+     */
+    public synchronized List<String> roomOf(String bedId) {
+        ensureLoaded();
+        Slot slot = slots.get(bedId);
+        if (slot == null) {
+            return List.of(bedId);
+        }
+        List<String> result = new ArrayList<>();
+        for (String id : slot.room.slots) {
+            if (id != null) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A free bed a resident of {@code gender} may take under the room rule: in a room
+     * already holding that gender if there is one, otherwise in an empty room.
+     */
+    public synchronized Optional<String> findBed(Gender gender) {
+        List<String> plan = plan(List.of(gender));
+        return plan == null ? Optional.empty() : Optional.of(plan.get(0));
+    }
+
+    /**
+     * Choose a bed for each gender in {@code intake}, in one pass and without changing the
+     * index. Residents of one gender fill the rooms already holding that gender first, in
+     * ward/room order, then claim empty rooms, so an intake stays grouped.
+     *
+     * @return the bed id for each entry of {@code intake}, or null if they do not all fit
+     */
+    public synchronized List<String> plan(List<Gender> intake) {
+        ensureLoaded();
+        Map<Room, BitSet> taken = new HashMap<>();
+        Map<Gender, Deque<Room>> candidates = new EnumMap<>(Gender.class);
+        Iterator<Room> empties = empty.iterator();
+        List<String> result = new ArrayList<>(intake.size());
+        for (Gender g : intake) {
+            Deque<Room> queue = candidates.computeIfAbsent(g, k -> new ArrayDeque<>(open.get(k)));
+            String bed = null;
+            while (bed == null) {
+                Room room = queue.peekFirst();
+                if (room == null) {
+                    if (!empties.hasNext()) {
+                        return null;
+                    }
+                    queue.addLast(empties.next());
+                    continue;
+                }
+                BitSet used = taken.computeIfAbsent(room, k -> new BitSet());
+                int slot = room.free.nextSetBit(0);
+                while (slot >= 0 && used.get(slot)) {
+                    slot = room.free.nextSetBit(slot + 1);
+                }
+                if (slot < 0) {
+                    queue.pollFirst();
+                } else {
+                    used.set(slot);
+                    bed = room.slots.get(slot);
+                }
+            }
+            result.add(bed);
+        }
+        return result;
+    }
+}
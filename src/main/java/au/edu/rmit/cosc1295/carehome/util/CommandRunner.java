@@ -0,0 +1,191 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs service calls off the JavaFX Application Thread.
+ *
+ * Design: a controller hands a command to {@link #submit}. The command runs on a bounded
+ * pool of daemon worker threads, and its result or exception is delivered back through
+ * {@link Platform#runLater}: the returned future always completes on the FX thread, so
+ * stages chained onto it (whenComplete, thenAccept, ...) can touch controls directly.
+ *
+ * Each command has a timeout (carehome.commands.timeoutMs, default 10000). When it
+ * expires the future fails with a {@link TimeoutException} and the UI moves on. The
+ * worker is deliberately not interrupted, because H2 closes its database file when a
+ * thread doing I/O is interrupted, so a timed-out save may still commit: controllers
+ * report it as still saving ({@link #stillRunning}) rather than as a failure, and a late
+ * result is discarded.
+ *
+ * The number of commands in flight is exposed as FX properties for busy indicators, and
+ * a command cannot be submitted again under the same name while it is still running,
+ * which stops double-clicks, or a retry after a timeout, from saving twice. A command
+ * counts as running until its worker returns, not until its future completes. Pool
+ * size: carehome.commands.threads (default 8).
+ */
+public final class CommandRunner {
+    private static final long DEFAULT_TIMEOUT_MS = Long.getLong("carehome.commands.timeoutMs", 10_000);
+    private static final int THREADS = Integer.getInteger("carehome.commands.threads", 8);
+
+    private static final ThreadPoolExecutor WORKERS;
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+        daemonFactory("command-timer"));
+
+    static {
+        WORKERS = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                                         new LinkedBlockingQueue<>(), daemonFactory("command"));
+        WORKERS.allowCoreThreadTimeOut(true);
+    }
+
+    // FX thread only
+    private static final ReadOnlyIntegerWrapper IN_FLIGHT = new ReadOnlyIntegerWrapper(0);
+    private static final ReadOnlyBooleanWrapper BUSY = new ReadOnlyBooleanWrapper(false);
+    private static final Set<String> RUNNING = new HashSet<>();
+
+    /**
+     * A service call that may throw checked exceptions.
+     */
+    @FunctionalInterface
+    public interface Command<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * A service call with no result.
+     */
+    @FunctionalInterface
+    public interface VoidCommand {
+        void run() throws Exception;
+    }
+
+    private CommandRunner() {
+    }
+
+    public static <T> CompletableFuture<T> submit(String name, Command<T> command) {
+        return submit(name, Duration.ofMillis(DEFAULT_TIMEOUT_MS), command);
+    }
+
+    public static CompletableFuture<Void> submit(String name, VoidCommand command) {
+        return submit(name, () -> {
+            command.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run {@code command} on a worker thread. Must be called on the FX thread. The future
+     * completes on the FX thread with the command's result, the exception it threw, or a
+     * TimeoutException after {@code timeout}.
+     */
+    public static <T> CompletableFuture<T> submit(String name, Duration timeout, Command<T> command) {
+        if (!Platform.isFxApplicationThread()) {
+            throw new IllegalStateException("Commands must be submitted from the FX thread");
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!RUNNING.add(name)) {
+            future.completeExceptionally(new IllegalStateException(name + " is already in progress"));
+            return future;
+        }
+        IN_FLIGHT.set(IN_FLIGHT.get() + 1);
+        BUSY.set(true);
+        // Only once the worker has returned, even if the future timed out long before
+        Runnable finished = () -> {
+            RUNNING.remove(name);
+            IN_FLIGHT.set(IN_FLIGHT.get() - 1);
+            BUSY.set(IN_FLIGHT.get() > 0);
+        };
+
+        ScheduledFuture<?> timer = TIMER.schedule(
+            () -> Platform.runLater(() -> future.completeExceptionally(
+                new TimeoutException(name + " is still running after " + timeout.toMillis() + " ms"))),
+            timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        try {
+            WORKERS.execute(() -> {
+                try {
+                    T result = command.call();
+                    timer.cancel(false);
+                    Platform.runLater(() -> {
+                        finished.run();
+                        future.complete(result);
+                    });
+                } catch (Throwable t) {
+                    timer.cancel(false);
+                    Platform.runLater(() -> {
+                        finished.run();
+                        future.completeExceptionally(t);
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            timer.cancel(false);
+            finished.run();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Number of commands currently running (FX thread).
+     */
+    public static ReadOnlyIntegerProperty inFlightProperty() {
+        return IN_FLIGHT.getReadOnlyProperty();
+    }
+
+    /**
+     * True while any command is running (FX thread).
+     */
+    public static ReadOnlyBooleanProperty busyProperty() {
+        return BUSY.getReadOnlyProperty();
+    }
+
+    /**
+     * Stop accepting commands and wait briefly for running ones, so that they finish
+     * before the database and audit log are closed.
+     */
+    public static void shutdown(Duration wait) {
+        WORKERS.shutdown();
+        TIMER.shutdownNow();
+        try {
+            WORKERS.awaitTermination(wait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The exception a command failed with, unwrapped from CompletionException.
+     */
+    public static Throwable cause(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Whether a command failed only by outliving its timeout. Its worker is still running
+     * and may yet succeed, so for a save this means "still saving", not "not saved".
+     */
+    public static boolean stillRunning(Throwable t) {
+        return cause(t) instanceof TimeoutException;
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,229 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small bounded JDBC connection pool.
+ *
+ * Design: at most {@code maxSize} physical connections exist at once, guarded by a
+ * semaphore. Borrowers wait up to the configured timeout for a permit. Idle connections
+ * are kept LIFO so the most recently used (warmest) connection is handed out first, and
+ * each one is validated before it is lent out.
+ *
+ * Callers receive a thin proxy whose {@code close()} returns the physical connection to
+ * the pool, so the usual try-with-resources pattern keeps working unchanged.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int validationTimeoutSeconds;
+
+    private final Semaphore permits;
+    private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private volatile boolean closed;
+
+    // Metrics
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, long borrowTimeoutMillis, int validationTimeoutSeconds) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrow a connection, waiting up to the borrow timeout if the pool is exhausted.
+     * Closing the returned connection hands it back to the pool.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException(
+                "Timed out after " + borrowTimeoutMillis + "ms waiting for a database connection");
+        }
+        borrows.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        try {
+            return lease(takeValid());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeValid() throws SQLException {
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            if (isUsable(c)) {
+                return c;
+            }
+            validationFailures.increment();
+            discard(c);
+        }
+        Connection fresh = DriverManager.getConnection(url, user, password);
+        created.increment();
+        open.incrementAndGet();
+        return fresh;
+    }
+
+    private boolean isUsable(Connection c) {
+        try {
+            return !c.isClosed() && c.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(Connection physical) {
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (closed) {
+                discard(physical);
+            } else {
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Connection c) {
+        open.decrementAndGet();
+        try {
+            c.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Connection lease(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new Lease(physical));
+    }
+
+    /**
+     * Close all idle connections and refuse further borrows. Connections still on loan
+     * are closed as they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            discard(c);
+        }
+    }
+
+    public Stats stats() {
+        long b = borrows.sum();
+        return new Stats(
+            maxSize,
+            open.get(),
+            idle.size(),
+            maxSize - permits.availablePermits(),
+            b,
+            timeouts.sum(),
+            created.sum(),
+            validationFailures.sum(),
+            b == 0 ? 0 : totalWaitNanos.sum() / b / 1_000,
+            maxWaitNanos.get() / 1_000);
+    }
+
+    /**
+     * Point-in-time pool metrics. Wait times are in microseconds.
+     */
+    public record Stats(int maxSize, int open, int idle, int inUse,
+                        long borrows, long timeouts, long created, long validationFailures,
+                        long avgWaitMicros, long maxWaitMicros) {
+    }
+
+    /**
+     * Proxy handler for a single borrow. After {@code close()} the lease is dead even though
+     * the physical connection lives on in the pool.
+     */
+    private final class Lease implements InvocationHandler {
+        private Connection physical;
+
+        Lease(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (physical != null) {
+                        Connection c = physical;
+                        physical = null;
+                        release(c);
+                    }
+                    return null;
+                case "isClosed":
+                    return physical == null || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (physical == null) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -1,23 +1,176 @@
 package au.edu.rmit.cosc1295.carehome.util;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 
+/**
+ * Central access point for the embedded H2 database.
+ *
+ * Connections come from a bounded {@link ConnectionPool}; closing a connection returns it
+ * to the pool instead of closing the database file. The schema bootstrap runs once per
+ * process, when the pool is first created.
+ *
+ * Pool settings can be overridden with system properties:
+ * - carehome.db.url (default jdbc:h2:./carehome_db; the tests use an in-memory database)
+ * - carehome.db.pool.size (default 4)
+ * - carehome.db.pool.timeoutMs (borrow timeout, default 5000)
+ * - carehome.db.pool.validationTimeoutSec (default 2)
+ *
+ * Repository writes go through {@link #write(String, Object...)}. By default they run
+ * synchronously. With -Dcarehome.db.writeBehind=true they are queued and committed in
+ * batches by a {@link WriteBehindWriter}, tuned with:
+ * - carehome.db.writeBehind.capacity (queue bound, default 10000)
+ * - carehome.db.writeBehind.maxBatch (default 200)
+ * - carehome.db.writeBehind.lingerMs (default 20)
+ * - carehome.db.writeBehind.spill (default carehome_db.spill)
+ * Queued writes are forced to the spill file before write() returns, and whatever a
+ * crashed run left in it is committed when the pool is created, whether or not
+ * write-behind is on this time.
+ */
 public class DatabaseManager {
-    private static final String DB_URL = "jdbc:h2:./carehome_db";
+    private static final String DB_URL = System.getProperty("carehome.db.url", "jdbc:h2:./carehome_db");
     private static final String DB_USER = "sa";
     private static final String DB_PASSWORD = "";
     
-    private static Connection connection;
+    private static final int POOL_SIZE = Integer.getInteger("carehome.db.pool.size", 4);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("carehome.db.pool.timeoutMs", 5000L);
+    private static final int VALIDATION_TIMEOUT_SEC = Integer.getInteger("carehome.db.pool.validationTimeoutSec", 2);
+    
+    private static final boolean WRITE_BEHIND = Boolean.getBoolean("carehome.db.writeBehind");
+    private static final int WRITE_BEHIND_CAPACITY = Integer.getInteger("carehome.db.writeBehind.capacity", 10_000);
+    private static final int WRITE_BEHIND_MAX_BATCH = Integer.getInteger("carehome.db.writeBehind.maxBatch", 200);
+    private static final long WRITE_BEHIND_LINGER_MS = Long.getLong("carehome.db.writeBehind.lingerMs", 20L);
+    private static final Path WRITE_BEHIND_SPILL =
+        Paths.get(System.getProperty("carehome.db.writeBehind.spill", "carehome_db.spill"));
+    
+    private static volatile ConnectionPool pool;
+    private static WriteBehindWriter writer;
     
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            initializeTables();
+        return pool().borrow();
+    }
+    
+    /**
+     * Create the pool, bootstrap the schema and replay any write-behind spill now, rather
+     * than on the first {@link #getConnection()}. Does nothing if that has happened.
+     */
+    public static void init() throws SQLException {
+        pool();
+    }
+    
+    private static ConnectionPool pool() throws SQLException {
+        ConnectionPool p = pool;
+        if (p != null) {
+            return p;
+        }
+        synchronized (DatabaseManager.class) {
+            if (pool == null) {
+                ConnectionPool created = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD,
+                    POOL_SIZE, BORROW_TIMEOUT_MS, VALIDATION_TIMEOUT_SEC);
+                try (Connection conn = created.borrow()) {
+                    initializeTables(conn);
+                    WriteBehindWriter.recover(WRITE_BEHIND_SPILL, conn);
+                } catch (SQLException e) {
+                    created.close();
+                    throw e;
+                }
+                pool = created;
+            }
+            return pool;
+        }
+    }
+    
+    /**
+     * Execute a single INSERT/UPDATE/MERGE. In write-behind mode the statement is queued
+     * and this returns immediately; otherwise it is executed on the calling thread.
+     */
+    public static void write(String sql, Object... params) throws SQLException {
+        SqlWrite w = new SqlWrite(sql, params);
+        if (WRITE_BEHIND) {
+            writer().enqueue(w);
+            return;
+        }
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            w.bind(pstmt);
+            pstmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Work done inside {@link #transaction}. Return true to commit, false to roll back.
+     */
+    @FunctionalInterface
+    public interface SqlWork {
+        boolean run(Connection conn) throws SQLException;
+    }
+    
+    /**
+     * Run {@code work} in one transaction. It is committed only if the work returns true;
+     * if it returns false or throws, everything it did is rolled back. Synchronous, with
+     * queued write-behind statements flushed first.
+     *
+     * @return whether the transaction was committed
+     */
+    public static boolean transaction(SqlWork work) throws SQLException {
+        flush();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (work.run(conn)) {
+                    conn.commit();
+                    return true;
+                }
+                conn.rollback();
+                return false;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+    
+    private static synchronized WriteBehindWriter writer() throws SQLException {
+        if (writer == null) {
+            try {
+                writer = new WriteBehindWriter(WRITE_BEHIND_SPILL, WRITE_BEHIND_CAPACITY,
+                                               WRITE_BEHIND_MAX_BATCH, WRITE_BEHIND_LINGER_MS);
+            } catch (IOException e) {
+                throw new SQLException("Could not open the write-behind spill " + WRITE_BEHIND_SPILL, e);
+            }
+            // Last line of defence if the app exits without calling close(). Closing rather
+            // than flushing, so a database that is down leaves the writes in the spill
+            // instead of holding up the exit
+            Runtime.getRuntime().addShutdownHook(new Thread(DatabaseManager::close, "write-behind-flush"));
+        }
+        return writer;
+    }
+    
+    /**
+     * Barrier: wait until all queued write-behind statements are committed.
+     * No-op in synchronous mode.
+     */
+    public static void flush() {
+        WriteBehindWriter w;
+        synchronized (DatabaseManager.class) {
+            w = writer;
+        }
+        if (w != null) {
+            w.flush();
         }
-        return connection;
     }
     
-    private static void initializeTables() throws SQLException {
+    /**
+     * Current pool metrics, or null if no connection has been requested yet.
+     */
+    public static ConnectionPool.Stats poolStats() {
+        ConnectionPool p = pool;
+        return p != null ? p.stats() : null;
+    }
+    
+    private static void initializeTables(Connection connection) throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             // Staff table
             stmt.execute("""
@@ -63,7 +216,7 @@ public class DatabaseManager {
             // Prescriptions table
             stmt.execute("""
                 CREATE TABLE IF NOT EXISTS prescriptions (
-                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    id BIGINT PRIMARY KEY,
                     resident_id VARCHAR(50) NOT NULL,
                     doctor_id VARCHAR(50) NOT NULL,
                     medicine VARCHAR(255) NOT NULL,
@@ -78,7 +231,7 @@ public class DatabaseManager {
             // Administration records table
             stmt.execute("""
                 CREATE TABLE IF NOT EXISTS administration_records (
-                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    id BIGINT PRIMARY KEY,
                     resident_id VARCHAR(50) NOT NULL,
                     nurse_id VARCHAR(50) NOT NULL,
                     medicine VARCHAR(255) NOT NULL,
@@ -89,6 +242,41 @@ public class DatabaseManager {
                 )
             """);
             
+            // Databases created before ids came from Ids: widen the keys, keep the old rows
+            widenIdColumn(stmt, "PRESCRIPTIONS");
+            widenIdColumn(stmt, "ADMINISTRATION_RECORDS");
+            
+            // One value per process start; see Ids
+            stmt.execute("CREATE SEQUENCE IF NOT EXISTS id_node_seq");
+            
+            // Last write-behind sequence committed; see WriteBehindWriter
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS write_behind_progress (
+                    id INT PRIMARY KEY,
+                    applied BIGINT NOT NULL
+                )
+            """);
+            
+            // Fast-start bookkeeping: which snapshot and journal match this database
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS snapshot_meta (
+                    id INT PRIMARY KEY,
+                    generation BIGINT NOT NULL,
+                    journal_length BIGINT NOT NULL,
+                    sealed BOOLEAN NOT NULL
+                )
+            """);
+            
+            // Secondary indexes for the per-resident and per-staff lookups
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_prescriptions_resident ON prescriptions(resident_id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_admin_resident_time ON administration_records(resident_id, timestamp)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_shifts_staff_day ON shifts(staff_id, day_of_week)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_beds_resident ON beds(resident_id)");
+            
+            // Keyset paging order for the history loads; without these every page sorts the table
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_prescriptions_created ON prescriptions(created_at, id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_admin_time ON administration_records(timestamp, id)");
+            
             // Initialize default beds if table is empty
             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM beds");
             if (rs.next() && rs.getInt(1) == 0) {
@@ -107,14 +295,27 @@ public class DatabaseManager {
         }
     }
     
+    private static void widenIdColumn(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                 "SELECT data_type FROM information_schema.columns " +
+                 "WHERE table_schema = 'PUBLIC' AND table_name = '" + table + "' AND column_name = 'ID'")) {
+            if (!rs.next() || "BIGINT".equals(rs.getString(1))) {
+                return;
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DATA TYPE BIGINT");
+    }
+    
     public static void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        synchronized (DatabaseManager.class) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            if (pool != null) {
+                pool.close();
+                pool = null;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
     }
 }
-
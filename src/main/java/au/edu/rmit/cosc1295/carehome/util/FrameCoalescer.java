@@ -0,0 +1,73 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import javafx.application.Platform;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Collects change events from any thread and hands them to the FX thread in batches.
+ *
+ * Design: events are held in insertion order, one per key; a later event for a key is
+ * merged with the pending one (the merge may return null to drop both). The first event
+ * after a delivery schedules a single {@link Platform#runLater}, and everything that
+ * arrives before it runs goes into the same batch. Since runLater work is processed
+ * before the next pulse, a burst of writes costs one UI update per frame, and a key
+ * changed several times in that frame is applied once.
+ */
+public final class FrameCoalescer<K, E> implements Consumer<E> {
+    private final Function<? super E, ? extends K> keyOf;
+    private final BinaryOperator<E> merge;
+    private final Consumer<List<E>> onBatch;
+
+    private Map<K, E> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    /**
+     * @param keyOf   identifies the thing an event is about
+     * @param merge   combines a pending event with a newer one for the same key
+     * @param onBatch receives each non-empty batch on the FX thread
+     */
+    public FrameCoalescer(Function<? super E, ? extends K> keyOf, BinaryOperator<E> merge,
+                          Consumer<List<E>> onBatch) {
+        this.keyOf = keyOf;
+        this.merge = merge;
+        this.onBatch = onBatch;
+    }
+
+    @Override
+    public void accept(E event) {
+        boolean schedule;
+        synchronized (this) {
+            K key = keyOf.apply(event);
+            E previous = pending.get(key);
+            E merged = previous == null ? event : merge.apply(previous, event);
+            if (merged == null) {
+                pending.remove(key);
+            } else {
+                pending.put(key, merged);
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            Platform.runLater(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        Map<K, E> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        if (!batch.isEmpty()) {
+            onBatch.accept(new ArrayList<>(batch.values()));
+        }
+    }
+}
@@ -1,7 +1,100 @@
 package au.edu.rmit.cosc1295.carehome.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique, time-ordered ids, used both as in-memory keys and as database primary keys.
+ *
+ * Layout (Snowflake style, 63 bits): milliseconds since 2024-01-01 UTC (41 bits, good
+ * until 2093), node (10 bits), sequence within the millisecond (12 bits). Ids from one
+ * process strictly increase, and ids from different processes sort by creation time to
+ * within clock skew, so new rows land at the end of the primary key index.
+ *
+ * Design: each process leases a node number once, from the id_node_seq database
+ * sequence, the first time it needs an id; that lease reserves the whole id space of the
+ * node, so no further database round trip is needed. Generation itself is lock-free: the
+ * last (millisecond, sequence) pair is one {@link AtomicLong} advanced by CAS. If the
+ * clock goes backwards, or more than 4096 ids are taken in one millisecond, the pair
+ * keeps counting from where it was, borrowing time from the following milliseconds,
+ * rather than reusing an id. If the database cannot be reached the node is chosen at
+ * random and a warning printed.
+ */
 public final class Ids {
+    private static final long EPOCH_MS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    /** Base-36 digits needed for any positive long, so string ids sort like the numbers. */
+    private static final int TEXT_WIDTH = 13;
+
+    private static final AtomicLong last = new AtomicLong();
+    private static volatile long node = -1;
+
     private Ids() {}
+
+    /**
+     * A new id, e.g. {@code R-0B1MZQ4K2T0XS}. Ids with the same prefix sort by creation time.
+     */
     public static String next(String prefix) {
-        return prefix + "-" + Long.toString(System.nanoTime(), 36).toUpperCase();
+        String digits = Long.toString(nextLong(), 36).toUpperCase();
+        return prefix + "-" + "0".repeat(TEXT_WIDTH - digits.length()) + digits;
+    }
+
+    /**
+     * A new positive id, for tables keyed by BIGINT.
+     */
+    public static long nextLong() {
+        long nodeBits = node();
+        long now = System.currentTimeMillis() - EPOCH_MS;
+        long prev;
+        long next;
+        do {
+            prev = last.get();
+            long fresh = now << SEQUENCE_BITS;
+            next = fresh > prev ? fresh : prev + 1;
+        } while (!last.compareAndSet(prev, next));
+        long millis = next >>> SEQUENCE_BITS;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeBits << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+    }
+
+    /**
+     * Creation time encoded in an id from {@link #nextLong}, in epoch milliseconds.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MS;
+    }
+
+    private static long node() {
+        long n = node;
+        if (n >= 0) {
+            return n;
+        }
+        synchronized (Ids.class) {
+            if (node < 0) {
+                node = leaseNode();
+            }
+            return node;
+        }
+    }
+
+    private static long leaseNode() {
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT NEXT VALUE FOR id_node_seq")) {
+            rs.next();
+            return rs.getLong(1) & NODE_MASK;
+        } catch (SQLException e) {
+            long n = ThreadLocalRandom.current().nextLong(NODE_MASK + 1);
+            System.err.println("Ids: could not lease a node from the database, using random node " + n);
+            e.printStackTrace();
+            return n;
+        }
     }
 }
@@ -0,0 +1,242 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only file of checksummed records, such as the changes since a
+ * {@link SnapshotFile}.
+ *
+ * Layout: magic (8), generation (8), then records of length (4), CRC32C of the payload
+ * (4) and the payload. The generation is the one of the snapshot the records apply to.
+ *
+ * Design: appends go into a buffer that is written out when full and on {@link #force()},
+ * so recording a change costs a copy, not a system call. The journal is therefore only
+ * trustworthy up to the length returned by the last force; callers store that length
+ * somewhere durable and {@link #replay} refuses to read a journal that is shorter or
+ * whose records up to that point do not check out. Callers that force after every
+ * append use {@link #forceTo} with the offset {@link #append} returned, so that one
+ * force covers every thread that appended meanwhile, and read the file back with
+ * {@link #recover}, which stops at the first torn record instead of failing.
+ *
+ * Thread safety: appends and forces are synchronized.
+ */
+public final class Journal implements AutoCloseable {
+    private static final long MAGIC = 0x43484A524E4C3031L; // "CHJRNL01"
+    public static final int HEADER_BYTES = 16;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private long length;
+    private long durable;
+
+    /**
+     * Open the journal for appending after its first {@code length} bytes, dropping
+     * anything beyond them. A length of 0 starts a new journal for {@code generation}.
+     */
+    public Journal(Path path, long generation, long length) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        if (length < HEADER_BYTES) {
+            reset(generation);
+        } else {
+            channel.truncate(length);
+            this.length = length;
+            this.durable = length;
+        }
+    }
+
+    /**
+     * Discard every record and start again for {@code generation}.
+     */
+    public synchronized void reset(long generation) throws IOException {
+        buffer.clear();
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+        length = HEADER_BYTES;
+        durable = length;
+    }
+
+    /**
+     * Add a record.
+     *
+     * @return the journal length with this record, for {@link #forceTo}
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        int size = 8 + payload.length;
+        if (buffer.remaining() < size) {
+            drain();
+        }
+        crc.reset();
+        crc.update(payload);
+        if (size > buffer.capacity()) {
+            ByteBuffer big = ByteBuffer.allocate(size).putInt(payload.length).putInt((int) crc.getValue())
+                                       .put(payload).flip();
+            write(big);
+        } else {
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        return length();
+    }
+
+    /**
+     * Write out buffered records and force them to disk.
+     *
+     * @return the length of the journal, all of which is now durable
+     */
+    public synchronized long force() throws IOException {
+        drain();
+        channel.force(false);
+        durable = length;
+        return length;
+    }
+
+    /**
+     * Make the first {@code end} bytes durable, forcing only if an earlier force has not
+     * already covered them.
+     */
+    public synchronized void forceTo(long end) throws IOException {
+        if (durable < end) {
+            force();
+        }
+    }
+
+    /**
+     * Bytes appended so far, including any still buffered.
+     */
+    public synchronized long length() {
+        return length + buffer.position();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            length += channel.write(src, length);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Hand each intact record of the journal at {@code path} to {@code onRecord}, in
+     * order, stopping at the first one that is torn or fails its checksum: the tail a
+     * crash left behind, which was never forced and so never relied on. A missing file
+     * has no records.
+     *
+     * @return the number of records read
+     * @throws IOException if the file is not a journal of {@code generation}
+     */
+    public static int recover(Path path, long generation, Consumer<ByteBuffer> onRecord) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < HEADER_BYTES) {
+            // Torn while the header was being written: nothing was appended yet
+            return 0;
+        }
+        if (in.getLong() != MAGIC) {
+            throw new IOException("not a journal file: " + path);
+        }
+        if (in.getLong() != generation) {
+            throw new IOException("journal generation does not match: " + path);
+        }
+        CRC32C crc = new CRC32C();
+        int records = 0;
+        while (in.remaining() >= 8) {
+            int size = in.getInt();
+            int expected = in.getInt();
+            if (size < 0 || size > in.remaining()) {
+                break;
+            }
+            ByteBuffer payload = in.slice(in.position(), size);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            onRecord.accept(payload);
+            in.position(in.position() + size);
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Hand each record among the first {@code validLength} bytes of the journal at
+     * {@code path} to {@code onRecord}, in order, as a buffer over its payload. Those bytes
+     * are copied onto the heap rather than mapped, so nothing pins the file once this
+     * returns and a journal opened on it afterwards can truncate or reset it.
+     *
+     * @throws IOException if the journal belongs to another generation, is shorter than
+     *         {@code validLength}, or a record in that range is torn or fails its checksum
+     */
+    public static void replay(Path path, long generation, long validLength, Consumer<ByteBuffer> onRecord)
+            throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("no journal at " + path);
+        }
+        ByteBuffer in;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < validLength || validLength < HEADER_BYTES || validLength > Integer.MAX_VALUE) {
+                throw new IOException("journal is shorter than its sealed length");
+            }
+            in = ByteBuffer.allocate((int) validLength);
+            while (in.hasRemaining()) {
+                if (ch.read(in, in.position()) < 0) {
+                    throw new IOException("journal is shorter than its sealed length");
+                }
+            }
+            in.flip();
+        }
+        if (in.getLong() != MAGIC) {
+            throw new IOException("not a journal file");
+        }
+        if (in.getLong() != generation) {
+            throw new IOException("journal generation does not match the snapshot");
+        }
+        CRC32C crc = new CRC32C();
+        while (in.hasRemaining()) {
+            if (in.remaining() < 8) {
+                throw new IOException("journal record header is torn at " + in.position());
+            }
+            int size = in.getInt();
+            int expected = in.getInt();
+            if (size < 0 || size > in.remaining()) {
+                throw new IOException("journal record is torn at " + in.position());
+            }
+            ByteBuffer payload = in.slice(in.position(), size);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("journal checksum mismatch at " + in.position());
+            }
+            onRecord.accept(payload);
+            in.position(in.position() + size);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Random access to the lines of a growing, append-only text file.
+ *
+ * Design: the file is never mapped or held open. {@link #refresh()} opens it, reads only
+ * the bytes appended since the last call and scans them for line breaks. The line index
+ * is sparse: it records the start offset of every {@value #CHECKPOINT}th line, and
+ * {@link #line(int)} copies the block of lines between two checkpoints onto the heap with
+ * one positional read and decodes all of them into a small LRU cache. Heap use therefore
+ * stays roughly flat however large the file gets, and nothing stops the writer renaming
+ * the file when it rotates (a mapping would on Windows, until it was garbage collected).
+ *
+ * Only complete (newline-terminated) lines are counted. If the file is replaced or
+ * truncated, for example when a log is rotated, the next refresh starts the index again
+ * and reports it; until then {@link #line(int)} returns an empty string for lines it can
+ * no longer read.
+ *
+ * {@link #read(InputStream)} indexes text that no longer changes, such as a decompressed
+ * log segment, held in one heap array instead of a file.
+ */
+public final class LineFile {
+    /** Returned by {@link #refresh()} when the file was replaced and the index restarted. */
+    public static final int RESET = -1;
+
+    private static final int CHECKPOINT = 64;
+    private static final int CACHE_SIZE = 512;
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private final Path path;
+    private final byte[] contents;
+    private long[] checkpoints = new long[64];
+    private int lines;
+    private long scanned;
+    /** Offset just past the last line break. */
+    private long complete;
+    private Object fileKey;
+
+    private final Map<Integer, String> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public LineFile(Path path) {
+        this.path = path;
+        this.contents = null;
+    }
+
+    private LineFile(byte[] contents) {
+        this.path = null;
+        this.contents = contents;
+        for (int i = 0; i < contents.length; i++) {
+            if (contents[i] == '\n') {
+                lineEndsAt(i);
+            }
+        }
+        scanned = contents.length;
+    }
+
+    /**
+     * Index everything {@code in} holds. {@link #refresh()} never finds new lines.
+     */
+    public static LineFile read(InputStream in) throws IOException {
+        return new LineFile(in.readAllBytes());
+    }
+
+    /**
+     * Pick up bytes appended since the last call.
+     *
+     * @return the number of new complete lines, or {@link #RESET} if the file was
+     *         replaced or truncated and the index was rebuilt from the start
+     */
+    public synchronized int refresh() throws IOException {
+        if (contents != null) {
+            return 0;
+        }
+        if (!Files.exists(path)) {
+            boolean hadLines = lines > 0;
+            clear();
+            return hadLines ? RESET : 0;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attrs.size();
+        // fileKey (the inode) spots a replaced file where the platform provides it;
+        // otherwise a shrink is the signal
+        boolean replaced = scanned > 0
+            && (size < scanned || !Objects.equals(attrs.fileKey(), fileKey));
+        if (replaced) {
+            clear();
+        }
+        fileKey = attrs.fileKey();
+        if (size == scanned) {
+            return replaced ? RESET : 0;
+        }
+        int before = lines;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(READ_CHUNK);
+            while (scanned < size) {
+                buf.clear().limit((int) Math.min(READ_CHUNK, size - scanned));
+                int n = ch.read(buf, scanned);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') {
+                        lineEndsAt(scanned + i);
+                    }
+                }
+                scanned += n;
+            }
+        }
+        return replaced ? RESET : lines - before;
+    }
+
+    public synchronized int lineCount() {
+        return lines;
+    }
+
+    /**
+     * Line {@code index} (0-based) without its line terminator.
+     */
+    public synchronized String line(int index) {
+        if (index < 0 || index >= lines) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        String cached = cache.get(index);
+        if (cached != null) {
+            return cached;
+        }
+        int block = index / CHECKPOINT;
+        int first = block * CHECKPOINT;
+        int count = Math.min(CHECKPOINT, lines - first);
+        long start = checkpoints[block];
+        long end = first + count < lines ? checkpoints[block + 1] : complete;
+        byte[] bytes;
+        try {
+            bytes = read(start, (int) (end - start));
+        } catch (IOException e) {
+            // Rotated away since the last refresh, which will reset the index
+            return "";
+        }
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            int nl = pos;
+            while (nl < bytes.length && bytes[nl] != '\n') {
+                nl++;
+            }
+            if (nl == bytes.length) {
+                break;
+            }
+            int len = nl > pos && bytes[nl - 1] == '\r' ? nl - pos - 1 : nl - pos;
+            cache.put(first + i, new String(bytes, pos, len, StandardCharsets.UTF_8));
+            pos = nl + 1;
+        }
+        return cache.getOrDefault(index, "");
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        if (contents != null) {
+            return Arrays.copyOfRange(contents, (int) position, (int) position + length);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if (!Objects.equals(key, fileKey)) {
+                throw new IOException("File replaced: " + path);
+            }
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, position + buf.position()) < 0) {
+                    throw new IOException("File truncated: " + path);
+                }
+            }
+            return buf.array();
+        }
+    }
+
+    private void lineEndsAt(long offset) {
+        lines++;
+        complete = offset + 1;
+        if (lines % CHECKPOINT == 0) {
+            int slot = lines / CHECKPOINT;
+            if (slot == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, slot * 2);
+            }
+            checkpoints[slot] = complete;
+        }
+    }
+
+    private void clear() {
+        lines = 0;
+        scanned = 0;
+        complete = 0;
+        checkpoints = new long[64];
+        cache.clear();
+    }
+}
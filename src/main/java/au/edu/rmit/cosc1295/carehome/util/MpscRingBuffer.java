@@ -0,0 +1,129 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer for many producers and a single consumer.
+ *
+ * Design: each slot carries a sequence number. A producer claims a position with one CAS
+ * on the tail, stores its element, then publishes it by advancing the slot's sequence; the
+ * consumer only takes a slot once it has been published, and frees it by moving the
+ * sequence on by one lap. Nobody ever blocks: {@link #offer} fails fast when the buffer
+ * is full and the caller decides whether to retry or drop.
+ *
+ * Every accepted element gets a unique, gap-free position, and the consumer sees
+ * elements in position order. That lets callers wait for "everything up to position n
+ * has been processed" with a single counter.
+ *
+ * {@link #poll()}, {@link #drain} and {@link #isEmpty()} must only be called from the
+ * consumer thread.
+ */
+public final class MpscRingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Try to append an element.
+     *
+     * @return the element's position, or -1 if the buffer is full
+     */
+    public long offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, pos + 1);
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return -1;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the next published element, or return null if there is none.
+     */
+    public E poll() {
+        long h = head;
+        int index = (int) h & mask;
+        if (sequences.get(index) != h + 1) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, h + mask + 1);
+        head = h + 1;
+        return element;
+    }
+
+    /**
+     * Pass up to {@code limit} published elements to the consumer, in order.
+     *
+     * @return the number of elements drained
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int n = 0;
+        E element;
+        while (n < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            n++;
+        }
+        return n;
+    }
+
+    public boolean isEmpty() {
+        long h = head;
+        return sequences.get((int) h & mask) != h + 1;
+    }
+
+    /**
+     * Number of elements taken by the consumer so far; equal to the position of the next
+     * element it will take.
+     */
+    public long consumed() {
+        return head;
+    }
+
+    /**
+     * Number of positions claimed by producers so far.
+     */
+    public long claimed() {
+        return tail.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
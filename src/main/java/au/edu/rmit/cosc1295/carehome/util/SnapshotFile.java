@@ -0,0 +1,143 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A checksummed binary file written in one go and read back in one go.
+ *
+ * Layout: magic (8), format version (4), generation (8), body length (8), CRC32C of the
+ * body (4), then the body. The generation is an opaque token the caller uses to tie the
+ * file to other state (for the fast-start snapshot, the row in snapshot_meta).
+ *
+ * Design: {@link #write} streams the body into a temporary file, fills in the header,
+ * forces it to disk and moves it over the old file atomically, so a reader sees either
+ * the old file or the complete new one. {@link #read} checks everything in the header and
+ * the checksum before handing out the body, so a torn or foreign file is rejected rather
+ * than half-decoded. The file is read into a heap buffer and closed, not mapped: JDK 17
+ * only unmaps a file when the buffer is garbage collected, and on Windows a mapped file
+ * cannot be replaced by the next {@link #write}.
+ */
+public final class SnapshotFile {
+    private static final long MAGIC = 0x4348534E41503031L; // "CHSNAP01"
+    private static final int HEADER_BYTES = 8 + 4 + 8 + 8 + 4;
+
+    /**
+     * Writes the body of a snapshot.
+     */
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Replace {@code path} with a new file holding {@code body}.
+     *
+     * @return the size of the file written
+     */
+    public static long write(Path path, int version, long generation, Body body) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        long bodyLength;
+        try (OutputStream file = Files.newOutputStream(tmp)) {
+            file.write(new byte[HEADER_BYTES]);
+            CountingOutputStream counted = new CountingOutputStream(new CheckedOutputStream(file, crc));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(counted, 64 * 1024));
+            body.writeTo(out);
+            out.flush();
+            bodyLength = counted.count;
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putInt(version).putLong(generation).putLong(bodyLength)
+                  .putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                ch.write(header, header.position());
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return HEADER_BYTES + bodyLength;
+    }
+
+    /**
+     * Read {@code path} and return its body, positioned at the start.
+     *
+     * @throws IOException if the file is missing, has another version or generation, is
+     *         truncated, or fails its checksum; the message says which
+     */
+    public static ByteBuffer read(Path path, int version, long generation) throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("no snapshot at " + path);
+        }
+        ByteBuffer in;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES || ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot has an impossible size: " + ch.size());
+            }
+            in = ByteBuffer.allocate((int) ch.size());
+            while (in.hasRemaining()) {
+                if (ch.read(in, in.position()) < 0) {
+                    throw new IOException("snapshot is truncated");
+                }
+            }
+            in.flip();
+        }
+        if (in.getLong() != MAGIC) {
+            throw new IOException("not a snapshot file");
+        }
+        int fileVersion = in.getInt();
+        if (fileVersion != version) {
+            throw new IOException("snapshot format " + fileVersion + ", expected " + version);
+        }
+        long fileGeneration = in.getLong();
+        if (fileGeneration != generation) {
+            throw new IOException("snapshot generation does not match the database");
+        }
+        long bodyLength = in.getLong();
+        int expectedCrc = in.getInt();
+        if (bodyLength != in.remaining()) {
+            throw new IOException("snapshot is truncated");
+        }
+        ByteBuffer body = in.slice();
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("snapshot checksum mismatch");
+        }
+        return body;
+    }
+
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * A single pending DML statement with its parameter values.
+ *
+ * Parameters are captured when the write is created, so a write that is executed later
+ * (write-behind) still persists the entity as it was at save time.
+ */
+public record SqlWrite(String sql, Object... params) {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INT = 3;
+    private static final byte TIMESTAMP = 4;
+    private static final byte BOOLEAN = 5;
+
+    public void bind(PreparedStatement ps) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+    }
+
+    /**
+     * Run the statement on {@code conn} and return the number of rows it changed.
+     */
+    public int execute(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Encode the statement for the write-behind spill file; read back with {@link #readFrom}.
+     *
+     * @throws IllegalArgumentException for a parameter type the spill cannot hold
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        writeString(out, sql);
+        out.writeInt(params.length);
+        for (Object p : params) {
+            if (p == null) {
+                out.writeByte(NULL);
+            } else if (p instanceof String s) {
+                out.writeByte(STRING);
+                writeString(out, s);
+            } else if (p instanceof Long l) {
+                out.writeByte(LONG);
+                out.writeLong(l);
+            } else if (p instanceof Integer n) {
+                out.writeByte(INT);
+                out.writeInt(n);
+            } else if (p instanceof Timestamp t) {
+                LocalDateTime time = t.toLocalDateTime();
+                out.writeByte(TIMESTAMP);
+                out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(time.getNano());
+            } else if (p instanceof Boolean b) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(b);
+            } else {
+                throw new IllegalArgumentException("Cannot spill a parameter of type " + p.getClass().getName());
+            }
+        }
+    }
+
+    public static SqlWrite readFrom(ByteBuffer in) {
+        String sql = readString(in);
+        Object[] params = new Object[in.getInt()];
+        for (int i = 0; i < params.length; i++) {
+            byte type = in.get();
+            params[i] = switch (type) {
+                case NULL -> null;
+                case STRING -> readString(in);
+                case LONG -> in.getLong();
+                case INT -> in.getInt();
+                case TIMESTAMP -> Timestamp.valueOf(LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC));
+                case BOOLEAN -> in.get() != 0;
+                default -> throw new IllegalStateException("unknown parameter type " + type);
+            };
+        }
+        return new SqlWrite(sql, params);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
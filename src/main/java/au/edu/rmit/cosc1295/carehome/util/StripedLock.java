@@ -0,0 +1,100 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of reentrant locks selected by key hash.
+ *
+ * Design: gives per-key mutual exclusion for read-modify-write operations without
+ * allocating a lock per entity. Two keys may share a stripe, which only costs a little
+ * extra contention. When a caller needs several keys at once it should use
+ * {@link #lockAll(Object...)}, which always acquires stripes in index order so that
+ * concurrent multi-key operations cannot deadlock.
+ */
+public final class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    public StripedLock(int count) {
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private int indexFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, stripes.length);
+    }
+
+    public ReentrantLock get(Object key) {
+        return stripes[indexFor(key)];
+    }
+
+    public <R> R withLock(Object key, Supplier<R> action) {
+        ReentrantLock lock = get(key);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void withLock(Object key, Runnable action) {
+        ReentrantLock lock = get(key);
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lock the stripes for all keys in a deadlock-free order. Close the returned handle
+     * (try-with-resources) to release them.
+     */
+    public Held lockAll(Object... keys) {
+        boolean[] needed = new boolean[stripes.length];
+        for (Object key : keys) {
+            if (key != null) {
+                needed[indexFor(key)] = true;
+            }
+        }
+        int count = 0;
+        for (boolean n : needed) {
+            if (n) {
+                count++;
+            }
+        }
+        ReentrantLock[] held = new ReentrantLock[count];
+        int j = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (needed[i]) {
+                stripes[i].lock();
+                held[j++] = stripes[i];
+            }
+        }
+        return new Held(held);
+    }
+
+    /**
+     * A set of stripes acquired by {@link #lockAll}; released in reverse order on close.
+     */
+    public static final class Held implements AutoCloseable {
+        private final ReentrantLock[] locks;
+
+        private Held(ReentrantLock[] locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of database writes that succeed or fail together, plus the in-memory changes and
+ * audit entries that should only happen if they succeed.
+ *
+ * Design: a service creates a unit, lets repositories register their statements (with
+ * the number of rows each must change, for conditional updates) and their after-commit
+ * actions, then calls {@link #commit()}. All statements run on one connection in one
+ * transaction; consecutive statements with the same SQL are sent as one JDBC batch. If a
+ * statement fails, or changes a different number of rows than expected, the transaction
+ * is rolled back and none of the after-commit actions run. Otherwise they run in the
+ * order they were registered, on the committing thread.
+ *
+ * A unit is single-use and not thread-safe.
+ */
+public final class UnitOfWork {
+    /** Expected row count meaning "any number of rows". */
+    public static final int ANY = -1;
+
+    private record Pending(SqlWrite write, int expectedRows) {}
+
+    private final List<Pending> writes = new ArrayList<>();
+    private final List<Runnable> onCommit = new ArrayList<>();
+    private boolean done;
+
+    /**
+     * Add a statement whose row count does not matter.
+     */
+    public UnitOfWork write(SqlWrite write) {
+        return expect(write, ANY);
+    }
+
+    /**
+     * Add a statement that must change exactly {@code rows} rows for the unit to commit.
+     */
+    public UnitOfWork expect(SqlWrite write, int rows) {
+        checkOpen();
+        writes.add(new Pending(write, rows));
+        return this;
+    }
+
+    /**
+     * Run {@code action} after a successful commit.
+     */
+    public UnitOfWork onCommit(Runnable action) {
+        checkOpen();
+        onCommit.add(action);
+        return this;
+    }
+
+    /**
+     * Execute every statement in one transaction and, if it commits, run the after-commit
+     * actions.
+     *
+     * @return true if committed; false if a statement changed an unexpected number of rows
+     *         and everything was rolled back
+     * @throws SQLException if a statement failed (everything was rolled back)
+     */
+    public boolean commit() throws SQLException {
+        checkOpen();
+        done = true;
+        boolean committed = writes.isEmpty() || DatabaseManager.transaction(this::execute);
+        if (committed) {
+            for (Runnable action : onCommit) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // The data is committed; one failed follow-up must not skip the rest
+                    e.printStackTrace();
+                }
+            }
+        }
+        return committed;
+    }
+
+    private boolean execute(Connection conn) throws SQLException {
+        int i = 0;
+        while (i < writes.size()) {
+            String sql = writes.get(i).write().sql();
+            int start = i;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                while (i < writes.size() && writes.get(i).write().sql().equals(sql)) {
+                    writes.get(i).write().bind(ps);
+                    ps.addBatch();
+                    i++;
+                }
+                int[] counts = ps.executeBatch();
+                for (int j = 0; j < counts.length; j++) {
+                    int expected = writes.get(start + j).expectedRows();
+                    if (expected != ANY && counts[j] != Statement.SUCCESS_NO_INFO && counts[j] != expected) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void checkOpen() {
+        if (done) {
+            throw new IllegalStateException("Unit of work already committed");
+        }
+    }
+}
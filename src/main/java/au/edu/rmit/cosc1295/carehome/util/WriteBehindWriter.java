@@ -0,0 +1,425 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background writer for write-behind persistence.
+ *
+ * Design: callers enqueue {@link SqlWrite}s and return immediately. A single daemon thread
+ * drains the queue, waiting up to {@code lingerMillis} for more writes to arrive, and
+ * flushes up to {@code maxBatchSize} writes per transaction. Consecutive writes that share
+ * the same SQL are sent as one JDBC batch; statement order is otherwise preserved so
+ * foreign keys are satisfied in the order the application made the changes.
+ *
+ * Durability: before {@link #enqueue} returns, the write is appended to a spill file (a
+ * {@link Journal}) under a sequence number and forced to disk; threads enqueueing at the
+ * same time share one force. Each batch records the last sequence it covers in the
+ * write_behind_progress row in the same transaction, so after a crash or kill
+ * {@link #recover} replays exactly the spilled writes that never reached the database.
+ * The spill is emptied when the queue runs dry once it has grown past 1 MB, and deleted
+ * on {@link #close()}.
+ *
+ * Failures: a write the database rejects (a constraint violation, bad data or a statement
+ * it cannot run) is reported and skipped. Any other failure, such as the database being
+ * unreachable or a lock timeout, may pass, so the writes not yet committed are retried
+ * every {@value #RETRY_MILLIS} ms and nothing later is written meanwhile: progress is a
+ * single sequence number, so no write may be recorded before those ahead of it. Once the
+ * writer is closing it stops retrying and leaves them in the spill for the next start.
+ *
+ * The queue is bounded: when it is full, {@link #enqueue} blocks rather than dropping
+ * writes. {@link #flush()} is a barrier that returns once everything enqueued before the
+ * call has been committed, and {@link #close()} flushes before stopping the thread.
+ */
+public final class WriteBehindWriter implements AutoCloseable {
+    // Queued to wake the writer early; never executed. (Interrupting the writer is not an
+    // option because H2 closes its file channel when an I/O thread is interrupted.)
+    private static final Queued WAKE_UP = new Queued(-1, new SqlWrite(""));
+    private static final long SPILL_GENERATION = 0x5350494C4CL; // "SPILL"
+    private static final long SPILL_RESET_BYTES = 1 << 20;
+    private static final long RETRY_MILLIS = 1000;
+    private static final String PROGRESS_SQL =
+        "MERGE INTO write_behind_progress (id, applied) KEY (id) VALUES (1, ?)";
+
+    private record Queued(long sequence, SqlWrite write) {}
+
+    private final BlockingQueue<Queued> queue;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final Path spillPath;
+    private final Journal spill;
+    private final Thread thread;
+
+    /** Held while a write is spilled and queued, so both happen in sequence order. */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private long sequence;
+
+    private final Object progress = new Object();
+    private long enqueued;
+    private long completed;
+    private volatile boolean flushRequested;
+    /** close() has started: failed writes are left in the spill instead of retried. */
+    private volatile boolean closing;
+    private volatile boolean closed;
+    /** Writes were left unwritten; nothing more is written and the spill is kept. */
+    private volatile boolean unwritten;
+
+    /**
+     * Start a writer spilling to {@code spillPath}. Run {@link #recover} on the same path
+     * first: anything already in the file is discarded.
+     */
+    public WriteBehindWriter(Path spillPath, int capacity, int maxBatchSize, long lingerMillis)
+            throws IOException, SQLException {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.spillPath = spillPath;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            this.sequence = appliedSequence(conn);
+        }
+        this.spill = new Journal(spillPath, SPILL_GENERATION, 0);
+        this.thread = new Thread(this::run, "write-behind");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Commit the writes a previous run spilled but did not get into the database, then
+     * delete the spill file. Writes the database rejects are reported and skipped, as they
+     * are when written normally; any other failure is thrown and the spill is kept for the
+     * next start. A spill file that cannot be read is moved aside with a warning.
+     *
+     * @return the number of writes replayed
+     */
+    public static int recover(Path spillPath, Connection conn) throws SQLException {
+        List<Queued> spilled = new ArrayList<>();
+        try {
+            Journal.recover(spillPath, SPILL_GENERATION, record -> spilled.add(decode(record)));
+        } catch (IOException | RuntimeException e) {
+            Path aside = spillPath.resolveSibling(spillPath.getFileName() + ".unreadable");
+            System.err.println("Write-behind spill " + spillPath + " could not be read; moved to " + aside);
+            e.printStackTrace();
+            try {
+                Files.move(spillPath, aside, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveFailure) {
+                moveFailure.printStackTrace();
+            }
+            return 0;
+        }
+        long applied = appliedSequence(conn);
+        spilled.removeIf(q -> q.sequence() <= applied);
+        int replayed = spilled.size();
+        if (replayed > 0) {
+            System.out.println("Write-behind: replaying " + replayed + " writes from " + spillPath);
+            writeBatch(conn, spilled);
+        }
+        try {
+            Files.deleteIfExists(spillPath);
+        } catch (IOException e) {
+            // Harmless: everything in it is now at or below the recorded sequence
+            e.printStackTrace();
+        }
+        return replayed;
+    }
+
+    public void enqueue(SqlWrite write) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind writer is closed");
+        }
+        long end;
+        appendLock.lock();
+        try {
+            Queued q = new Queued(sequence + 1, write);
+            try {
+                end = spill.append(encode(q));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not spill database write", e);
+            }
+            sequence++;
+            synchronized (progress) {
+                enqueued++;
+            }
+            // Once spilled the write must reach the database, so an interrupt is only
+            // passed on after it has been queued
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(q);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            spill.forceTo(end);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not force the write-behind spill to disk", e);
+        }
+    }
+
+    /**
+     * Block until every write enqueued before this call has been committed (or reported
+     * as failed).
+     */
+    public void flush() {
+        long target;
+        synchronized (progress) {
+            target = enqueued;
+        }
+        flushRequested = true;
+        queue.offer(WAKE_UP);
+        synchronized (progress) {
+            while (completed < target) {
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closing = true;
+        flush();
+        closed = true;
+        queue.offer(WAKE_UP);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spill.close();
+            if (!unwritten && !thread.isAlive() && queue.stream().allMatch(q -> q == WAKE_UP)) {
+                Files.deleteIfExists(spillPath);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Queued> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Queued first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (first != WAKE_UP) {
+                    batch.add(first);
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < maxBatchSize && !flushRequested && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Queued next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next != WAKE_UP) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            batch.removeIf(w -> w == WAKE_UP);
+            if (queue.isEmpty()) {
+                flushRequested = false;
+            }
+            if (!batch.isEmpty()) {
+                int size = batch.size();
+                writeUntilDone(batch);
+                markCompleted(size);
+                batch.clear();
+                trimSpill();
+            }
+        }
+    }
+
+    /**
+     * Empty the spill once it is large and everything in it is committed. Skipped while a
+     * producer is spilling (it may be blocked on a full queue), so this never waits.
+     */
+    private void trimSpill() {
+        if (unwritten || spill.length() < SPILL_RESET_BYTES || !queue.isEmpty() || !appendLock.tryLock()) {
+            return;
+        }
+        try {
+            if (queue.isEmpty()) {
+                spill.reset(SPILL_GENERATION);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Write {@code batch}, retrying whatever is left after a failure until it is written or
+     * the writer is closing, in which case it stays in the spill.
+     */
+    private void writeUntilDone(List<Queued> batch) {
+        boolean reported = false;
+        while (!unwritten) {
+            try (Connection conn = DatabaseManager.getConnection()) {
+                writeBatch(conn, batch);
+                return;
+            } catch (SQLException e) {
+                if (!reported) {
+                    System.err.println("Write-behind: " + batch.size() + " writes failed; retrying");
+                    e.printStackTrace();
+                    reported = true;
+                }
+            }
+            if (closing) {
+                // Replayed on the next start
+                unwritten = true;
+                return;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                unwritten = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Commit {@code batch} with its progress. Writes leave {@code batch} as they are
+     * committed or rejected, so if this throws it holds the ones still to write.
+     */
+    private static void writeBatch(Connection conn, List<Queued> batch) throws SQLException {
+        long last = batch.get(batch.size() - 1).sequence();
+        conn.setAutoCommit(false);
+        try {
+            try {
+                executeGrouped(conn, batch);
+                new SqlWrite(PROGRESS_SQL, last).execute(conn);
+                conn.commit();
+                batch.clear();
+                return;
+            } catch (SQLException e) {
+                conn.rollback();
+            }
+            // One bad row must not take the whole batch down with it: write one by one,
+            // each committed with its progress
+            for (Iterator<Queued> it = batch.iterator(); it.hasNext(); ) {
+                Queued q = it.next();
+                try {
+                    try {
+                        q.write().execute(conn);
+                    } catch (SQLException e) {
+                        if (!rejected(e)) {
+                            throw e;
+                        }
+                        conn.rollback();
+                        System.err.println("Write-behind failed for: " + q.write().sql());
+                        e.printStackTrace();
+                    }
+                    new SqlWrite(PROGRESS_SQL, q.sequence()).execute(conn);
+                    conn.commit();
+                } catch (SQLException e) {
+                    // Not recorded: this write and the rest are tried again
+                    conn.rollback();
+                    throw e;
+                }
+                it.remove();
+            }
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Whether the database refused {@code e}'s write for good, so retrying cannot help.
+     */
+    private static boolean rejected(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException
+            || e instanceof SQLSyntaxErrorException;
+    }
+
+    private static void executeGrouped(Connection conn, List<Queued> batch) throws SQLException {
+        int i = 0;
+        while (i < batch.size()) {
+            String sql = batch.get(i).write().sql();
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                while (i < batch.size() && batch.get(i).write().sql().equals(sql)) {
+                    batch.get(i).write().bind(ps);
+                    ps.addBatch();
+                    i++;
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private static long appliedSequence(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT applied FROM write_behind_progress WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static byte[] encode(Queued q) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(q.sequence());
+        q.write().writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static Queued decode(ByteBuffer record) {
+        long sequence = record.getLong();
+        return new Queued(sequence, SqlWrite.readFrom(record));
+    }
+
+    private void markCompleted(int n) {
+        synchronized (progress) {
+            completed += n;
+            progress.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package au.edu.rmit.cosc1295.carehome;
+
+import au.edu.rmit.cosc1295.carehome.service.AuditService;
+import au.edu.rmit.cosc1295.carehome.util.DatabaseManager;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers shared by the concurrency tests. The database is the in-memory one surefire
+ * points carehome.db.url at, so every test uses fresh ids rather than a clean schema.
+ */
+public final class TestSupport {
+    private static final long RACE_TIMEOUT_SECONDS = 60;
+
+    /**
+     * One racer's work; {@code index} is 0 to threads - 1.
+     */
+    @FunctionalInterface
+    public interface Racer {
+        void run(int index) throws Exception;
+    }
+
+    private TestSupport() {
+    }
+
+    /**
+     * An audit log in {@code dir} that neither echoes nor rolls.
+     */
+    public static AuditService audit(Path dir) {
+        return new AuditService(dir.resolve("actions.log"), 8192, AuditService.Backpressure.BLOCK,
+                                AuditService.Durability.FIRE_AND_FORGET, 50, false,
+                                new AuditService.Rotation(16L * 1024 * 1024, false, -1, false));
+    }
+
+    /**
+     * Start {@code threads} threads together on {@code racer} and wait for all of them.
+     *
+     * @throws AssertionError if a racer threw, or a thread is still running after a minute
+     *         (a deadlock, for the lock tests)
+     */
+    public static void race(int threads, Racer racer) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> running = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    racer.run(index);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "racer-" + i);
+            t.setDaemon(true);
+            t.start();
+            running.add(t);
+        }
+        start.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RACE_TIMEOUT_SECONDS);
+        for (Thread t : running) {
+            t.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (t.isAlive()) {
+                throw new AssertionError(t.getName() + " still running after " + RACE_TIMEOUT_SECONDS + "s");
+            }
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " racer(s) failed", failures.get(0));
+            failures.subList(1, failures.size()).forEach(error::addSuppressed);
+            throw error;
+        }
+    }
+
+    /**
+     * The single number {@code sql} selects.
+     */
+    public static long queryLong(String sql, Object... params) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import au.edu.rmit.cosc1295.carehome.TestSupport;
+import au.edu.rmit.cosc1295.carehome.exceptions.BedOccupiedException;
+import au.edu.rmit.cosc1295.carehome.model.Bed;
+import au.edu.rmit.cosc1295.carehome.model.Gender;
+import au.edu.rmit.cosc1295.carehome.model.Resident;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryBedRepository;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryResidentRepository;
+import au.edu.rmit.cosc1295.carehome.util.Ids;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Races {@link ResidentService#assignResidentToBed} and {@link ResidentService#moveResident}
+ * over a few beds. The bed and resident locks, and the conditional bed updates, are what
+ * keep two residents out of one bed, so the checks are: no bed is booked twice, beds and
+ * residents point at each other, and memory agrees with the beds and residents tables.
+ */
+class ResidentServiceConcurrencyTest {
+    private static final int THREADS = 12;
+    private static final int OPERATIONS = 40;
+
+    @TempDir
+    static Path auditDir;
+    private static AuditService audit;
+
+    private InMemoryBedRepository bedRepo;
+    private InMemoryResidentRepository residentRepo;
+    private ResidentService service;
+
+    @BeforeAll
+    static void openAudit() {
+        audit = TestSupport.audit(auditDir);
+    }
+
+    @AfterAll
+    static void closeAudit() {
+        audit.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        bedRepo = new InMemoryBedRepository();
+        residentRepo = new InMemoryResidentRepository();
+        service = new ResidentService(residentRepo, bedRepo, new VacancyIndex(bedRepo, residentRepo), audit);
+    }
+
+    @RepeatedTest(10)
+    void assignsAndMovesNeverDoubleBookABed() throws Exception {
+        List<String> beds = newBeds(4);
+        List<String> residents = newResidents(6);
+        AtomicInteger changed = new AtomicInteger();
+        TestSupport.race(THREADS, i -> {
+            Random random = new Random(i);
+            for (int n = 0; n < OPERATIONS; n++) {
+                String residentId = residents.get(random.nextInt(residents.size()));
+                String bedId = beds.get(random.nextInt(beds.size()));
+                if (tryPlace(residentId, bedId)) {
+                    changed.incrementAndGet();
+                }
+            }
+        });
+
+        assertTrue(changed.get() > 0, "no assign or move succeeded");
+        assertConsistent(beds, residents);
+    }
+
+    @RepeatedTest(10)
+    void movesAmongFewFreeBedsKeepEveryoneHoused() throws Exception {
+        List<String> beds = newBeds(4);
+        List<String> residents = newResidents(3);
+        for (int i = 0; i < residents.size(); i++) {
+            service.assignResidentToBed("M-ADMIN", residents.get(i), beds.get(i));
+        }
+        // One free bed: every move competes for it and vacates another
+        TestSupport.race(THREADS, i -> {
+            Random random = new Random(i);
+            for (int n = 0; n < OPERATIONS; n++) {
+                tryPlace(residents.get(random.nextInt(residents.size())), beds.get(random.nextInt(beds.size())));
+            }
+        });
+
+        assertConsistent(beds, residents);
+        for (String residentId : residents) {
+            assertNotNull(residentRepo.findById(residentId).orElseThrow().getBedId(), residentId + " lost their bed");
+        }
+        assertEquals(residents.size(), TestSupport.queryLong(
+            "SELECT COUNT(*) FROM beds WHERE id IN (?, ?, ?, ?) AND resident_id IS NOT NULL", beds.toArray()));
+    }
+
+    /**
+     * Assign or move {@code residentId} to {@code bedId}, whichever applies now.
+     *
+     * @return false if another thread got there first
+     */
+    private boolean tryPlace(String residentId, String bedId) {
+        try {
+            if (residentRepo.findById(residentId).orElseThrow().getBedId() == null) {
+                service.assignResidentToBed("M-ADMIN", residentId, bedId);
+            } else {
+                service.moveResident("M-ADMIN", residentId, bedId);
+            }
+            return true;
+        } catch (BedOccupiedException e) {
+            return false;
+        } catch (IllegalStateException e) {
+            // Placed by another thread between the check and the assign
+            return false;
+        }
+    }
+
+    private void assertConsistent(List<String> beds, List<String> residents) throws Exception {
+        Set<String> occupants = new HashSet<>();
+        for (String bedId : beds) {
+            String occupant = bedRepo.findById(bedId).orElseThrow().getResidentId();
+            if (occupant != null) {
+                assertTrue(occupants.add(occupant), occupant + " is in two beds");
+                assertEquals(bedId, residentRepo.findById(occupant).orElseThrow().getBedId(),
+                             bedId + " holds " + occupant + " but they are elsewhere");
+            }
+            assertEquals(1, TestSupport.queryLong(
+                "SELECT COUNT(*) FROM beds WHERE id = ? AND resident_id IS NOT DISTINCT FROM ?", bedId, occupant),
+                "beds row for " + bedId + " differs from memory");
+            assertTrue(TestSupport.queryLong("SELECT COUNT(*) FROM residents WHERE bed_id = ?", bedId) <= 1,
+                       bedId + " is booked twice in the database");
+        }
+        for (String residentId : residents) {
+            String bedId = residentRepo.findById(residentId).orElseThrow().getBedId();
+            if (bedId != null) {
+                assertEquals(residentId, bedRepo.findById(bedId).orElseThrow().getResidentId(),
+                             residentId + " is in " + bedId + " but the bed holds someone else");
+            }
+            assertEquals(1, TestSupport.queryLong(
+                "SELECT COUNT(*) FROM residents WHERE id = ? AND bed_id IS NOT DISTINCT FROM ?", residentId, bedId),
+                "residents row for " + residentId + " differs from memory");
+        }
+    }
+
+    private List<String> newBeds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = Ids.next("B");
+            bedRepo.save(new Bed(id));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private List<String> newResidents(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Resident r = service.addResident("M-ADMIN", "Resident " + i, i % 2 == 0 ? Gender.FEMALE : Gender.MALE);
+            ids.add(r.getId());
+        }
+        return ids;
+    }
+}
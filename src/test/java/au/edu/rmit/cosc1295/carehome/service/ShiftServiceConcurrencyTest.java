@@ -0,0 +1,152 @@
+package au.edu.rmit.cosc1295.carehome.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import au.edu.rmit.cosc1295.carehome.TestSupport;
+import au.edu.rmit.cosc1295.carehome.exceptions.ShiftViolationException;
+import au.edu.rmit.cosc1295.carehome.model.DayOfWeek;
+import au.edu.rmit.cosc1295.carehome.model.Nurse;
+import au.edu.rmit.cosc1295.carehome.model.Shift;
+import au.edu.rmit.cosc1295.carehome.repository.InMemoryStaffRepository;
+import au.edu.rmit.cosc1295.carehome.util.Ids;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Races {@link ShiftService#assignShift} for one staff member from many threads. The
+ * staff member's stripe lock is all that keeps a validated shift from being overtaken by
+ * another one, so the checks are: accepted shifts never overlap, the hour totals match
+ * the shifts, no accepted shift is lost, and memory agrees with the shifts table.
+ */
+class ShiftServiceConcurrencyTest {
+    private static final int THREADS = 16;
+
+    @TempDir
+    static Path auditDir;
+    private static AuditService audit;
+
+    private InMemoryStaffRepository staffRepo;
+    private ShiftService shifts;
+
+    @BeforeAll
+    static void openAudit() {
+        audit = TestSupport.audit(auditDir);
+    }
+
+    @AfterAll
+    static void closeAudit() {
+        audit.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        staffRepo = new InMemoryStaffRepository();
+        shifts = new ShiftService(staffRepo, audit);
+    }
+
+    @RepeatedTest(10)
+    void overlappingShiftsAreNeverBothAccepted() throws Exception {
+        String nurse = newNurse();
+        // Two-hour shifts starting every half hour: most pairs overlap
+        List<Shift> candidates = new ArrayList<>();
+        for (int m = 0; m <= 10 * 60; m += 30) {
+            candidates.add(shift(DayOfWeek.MON, m, m + 120));
+        }
+        AtomicInteger accepted = new AtomicInteger();
+        TestSupport.race(THREADS, i -> {
+            List<Shift> order = new ArrayList<>(candidates);
+            Collections.shuffle(order, new Random(i));
+            for (Shift s : order) {
+                if (tryAssign(nurse, s)) {
+                    accepted.incrementAndGet();
+                }
+            }
+        });
+
+        StaffRoster roster = shifts.getRoster(nurse);
+        List<Shift> onMonday = roster.shiftsOn(DayOfWeek.MON);
+        for (int a = 0; a < onMonday.size(); a++) {
+            for (int b = a + 1; b < onMonday.size(); b++) {
+                assertFalse(onMonday.get(a).overlaps(onMonday.get(b)), onMonday.get(a) + " overlaps " + onMonday.get(b));
+            }
+        }
+        assertTrue(roster.isCompliant());
+        assertEquals(accepted.get(), roster.size());
+        assertEquals(2L * roster.size(), roster.dailyHours(DayOfWeek.MON));
+        assertTrue(roster.dailyHours(DayOfWeek.MON) <= Rules.MAX_DAILY_HOURS);
+        assertEquals(roster.size(), shiftRows(nurse));
+    }
+
+    @RepeatedTest(10)
+    void concurrentShiftsAreAllKept() throws Exception {
+        String nurse = newNurse();
+        // Each thread owns a day and adds three shifts to it, 42 hours in all
+        TestSupport.race(DayOfWeek.values().length, i -> {
+            DayOfWeek day = DayOfWeek.values()[i];
+            for (int start : new int[] {6 * 60, 10 * 60, 14 * 60}) {
+                shifts.assignShift("M-ADMIN", nurse, shift(day, start, start + 120));
+            }
+        });
+
+        StaffRoster roster = shifts.getRoster(nurse);
+        assertEquals(21, roster.size());
+        assertEquals(42, roster.weeklyHours());
+        for (DayOfWeek day : DayOfWeek.values()) {
+            assertEquals(6, roster.dailyHours(day));
+            assertTrue(shifts.isOnDuty(nurse, day, LocalTime.of(7, 0)));
+            assertFalse(shifts.isOnDuty(nurse, day, LocalTime.of(9, 0)));
+        }
+        assertEquals(21, shiftRows(nurse));
+    }
+
+    @RepeatedTest(10)
+    void weeklyLimitHoldsUnderContention() throws Exception {
+        String nurse = newNurse();
+        // 56 hours offered, 48 allowed: exactly 24 two-hour shifts may go in, whatever the order
+        TestSupport.race(DayOfWeek.values().length * 2, i -> {
+            DayOfWeek day = DayOfWeek.values()[i % DayOfWeek.values().length];
+            int first = i < DayOfWeek.values().length ? 0 : 2;
+            for (int k = first; k < first + 2; k++) {
+                tryAssign(nurse, shift(day, k * 180, k * 180 + 120));
+            }
+        });
+
+        StaffRoster roster = shifts.getRoster(nurse);
+        assertEquals(Rules.MAX_WEEKLY_HOURS, roster.weeklyHours());
+        assertEquals(24, roster.size());
+        assertEquals(24, shiftRows(nurse));
+    }
+
+    private boolean tryAssign(String staffId, Shift s) {
+        try {
+            shifts.assignShift("M-ADMIN", staffId, s);
+            return true;
+        } catch (ShiftViolationException e) {
+            return false;
+        }
+    }
+
+    private String newNurse() {
+        String id = Ids.next("N");
+        staffRepo.save(new Nurse(id, "Nurse " + id, id.toLowerCase(), "x"));
+        return id;
+    }
+
+    private static Shift shift(DayOfWeek day, int startMinute, int endMinute) {
+        return new Shift(day, LocalTime.of(startMinute / 60, startMinute % 60), LocalTime.of(endMinute / 60, endMinute % 60));
+    }
+
+    private static long shiftRows(String staffId) throws Exception {
+        return TestSupport.queryLong("SELECT COUNT(*) FROM shifts WHERE staff_id = ?", staffId);
+    }
+}
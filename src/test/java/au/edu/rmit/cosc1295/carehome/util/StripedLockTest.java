@@ -0,0 +1,92 @@
+package au.edu.rmit.cosc1295.carehome.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import au.edu.rmit.cosc1295.carehome.TestSupport;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class StripedLockTest {
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 20_000;
+
+    @Test
+    void withLockMakesReadModifyWriteAtomic() throws Exception {
+        StripedLock locks = new StripedLock(8);
+        long[] counter = new long[1];
+        TestSupport.race(THREADS, i -> {
+            for (int n = 0; n < ROUNDS; n++) {
+                locks.withLock("key", () -> {
+                    counter[0]++;
+                });
+            }
+        });
+        assertEquals((long) THREADS * ROUNDS, counter[0]);
+    }
+
+    @Test
+    void lockAllInAnyKeyOrderNeitherDeadlocksNorLosesUpdates() throws Exception {
+        // Few stripes and overlapping key sets in random order: the worst case for ordering
+        StripedLock locks = new StripedLock(4);
+        String[] keys = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"};
+        long[] counters = new long[keys.length];
+        long[][] expected = new long[THREADS][keys.length];
+        TestSupport.race(THREADS, i -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int n = 0; n < ROUNDS; n++) {
+                int x = random.nextInt(keys.length);
+                int y = random.nextInt(keys.length);
+                int z = random.nextInt(keys.length);
+                StripedLock.Held held = locks.lockAll(keys[z], keys[x], keys[y]);
+                try {
+                    for (int k : new int[] {x, y, z}) {
+                        counters[k]++;
+                        expected[i][k]++;
+                    }
+                } finally {
+                    held.close();
+                }
+            }
+        });
+        for (int k = 0; k < keys.length; k++) {
+            long sum = 0;
+            for (long[] tally : expected) {
+                sum += tally[k];
+            }
+            assertEquals(sum, counters[k], "updates lost on " + keys[k]);
+        }
+        for (String key : keys) {
+            assertFalse(locks.get(key).isLocked(), key + " still locked");
+        }
+    }
+
+    @Test
+    void lockAllTakesASharedStripeOnce() {
+        StripedLock locks = new StripedLock(1);
+        StripedLock.Held held = locks.lockAll("a", "b", null, "a");
+        try {
+            assertEquals(1, locks.get("a").getHoldCount());
+        } finally {
+            held.close();
+        }
+        assertFalse(locks.get("a").isLocked());
+    }
+
+    @Test
+    void heldStripesExcludeOtherThreadsUntilClosed() throws Exception {
+        StripedLock locks = new StripedLock(16);
+        AtomicBoolean acquiredWhileHeld = new AtomicBoolean();
+        StripedLock.Held held = locks.lockAll("x", "y");
+        try {
+            TestSupport.race(1, i -> acquiredWhileHeld.set(locks.get("y").tryLock()));
+        } finally {
+            held.close();
+        }
+        assertFalse(acquiredWhileHeld.get());
+        TestSupport.race(1, i -> {
+            assertTrue(locks.get("y").tryLock());
+            locks.get("y").unlock();
+        });
+    }
+}